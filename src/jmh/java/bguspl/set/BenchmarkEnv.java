@@ -0,0 +1,39 @@
+package bguspl.set;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Builds game environments for the benchmarks: no user interface, no logging and no table delays, so only the
+ * engine itself is measured.
+ */
+public class BenchmarkEnv {
+
+    private BenchmarkEnv() {}
+
+    /**
+     * @param featureCount - the number of features on the cards.
+     * @param players      - the number of (computer) players.
+     * @return - the configuration properties of a silent, delay-free game.
+     */
+    public static Properties properties(int featureCount, int players) {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("FeatureSize", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("TableDelaySeconds", "0");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        return properties;
+    }
+
+    public static Env create(Properties properties) {
+        Logger logger = Logger.getAnonymousLogger();
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+    }
+}
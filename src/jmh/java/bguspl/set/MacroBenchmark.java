@@ -0,0 +1,149 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * End-to-end benchmark: plays complete headless games (dealer, players and table together) and reports throughput,
+ * claim-to-verdict latency, dealer utilisation and allocation per game.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar bguspl.set.MacroBenchmark [Key=Value ...]
+ * <p>
+ * Harness keys: Games, WarmupGames, Output (CSV file) and the pass/fail thresholds MinSetsPerSecond,
+ * MinClaimsPerSecond, MaxClaimP99Micros, MaxAllocatedMBPerGame and MaxDealerUtilisation (a threshold is only checked
+ * if it is given). Every other key is a game configuration property (e.g. ComputerPlayers=8, Rows=4, FeatureCount=5).
+ * The process exits with status 1 if any threshold is not met, so it can gate a release.
+ */
+public class MacroBenchmark {
+
+    private static final String[] HARNESS_KEYS = {"Games", "WarmupGames", "Output", "MinSetsPerSecond",
+            "MinClaimsPerSecond", "MaxClaimP99Micros", "MaxAllocatedMBPerGame", "MaxDealerUtilisation"};
+
+    private static Properties defaultGameProperties() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "4");
+        properties.put("TurnTimeoutSeconds", "5");
+        properties.put("TurnTimeoutWarningSeconds", "1");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        return properties;
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Properties harness = new Properties();
+        Properties game = defaultGameProperties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("expected Key=Value, got: " + arg);
+            String key = arg.substring(0, eq).trim();
+            String value = arg.substring(eq + 1).trim();
+            (isHarnessKey(key) ? harness : game).put(key, value);
+        }
+
+        int games = Integer.parseInt(harness.getProperty("Games", "5"));
+        int warmupGames = Integer.parseInt(harness.getProperty("WarmupGames", "1"));
+        Path output = Paths.get(harness.getProperty("Output", "target/macro-benchmark.csv"));
+
+        for (int i = 0; i < warmupGames; i++)
+            new HeadlessGame(game).play();
+
+        List<HeadlessGame.Result> results = new ArrayList<>();
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            HeadlessGame.Result result = new HeadlessGame(game).play();
+            results.add(result);
+            latency.add(result.metrics.latency(GameMetrics.Stage.CLAIM_TO_VERDICT));
+            System.out.println(String.format(Locale.ROOT, "game %d: %.2fs, %d sets, %d claims",
+                    i + 1, seconds(result.durationNanos), result.metrics.sets.sum(), result.metrics.claims.sum()));
+        }
+        double wallSeconds = seconds(System.nanoTime() - start);
+
+        writeCsv(output, results);
+
+        long claims = 0, sets = 0, allocated = 0;
+        double utilisation = 0;
+        for (HeadlessGame.Result result : results) {
+            claims += result.metrics.claims.sum();
+            sets += result.metrics.sets.sum();
+            allocated += result.metrics.allocatedBytes.sum();
+            utilisation += result.metrics.dealerUtilisation();
+        }
+        double claimsPerSecond = claims / wallSeconds;
+        double setsPerSecond = sets / wallSeconds;
+        double allocatedMBPerGame = games == 0 ? 0 : allocated / (1024.0 * 1024.0) / games;
+        double dealerUtilisation = games == 0 ? 0 : utilisation / games;
+
+        System.out.println(String.format(Locale.ROOT,
+                "%d games in %.2fs: %.3f games/s, %.1f claims/s, %.1f sets/s, dealer utilisation %.1f%%, %.2f MB allocated per game",
+                games, wallSeconds, games / wallSeconds, claimsPerSecond, setsPerSecond, dealerUtilisation * 100,
+                allocatedMBPerGame));
+        System.out.println("claim to verdict: " + latency.summary());
+        System.out.println("results written to " + output);
+
+        boolean pass = checkMin(harness, "MinSetsPerSecond", setsPerSecond)
+                & checkMin(harness, "MinClaimsPerSecond", claimsPerSecond)
+                & checkMax(harness, "MaxClaimP99Micros", latency.percentile(99) / 1000.0)
+                & checkMax(harness, "MaxAllocatedMBPerGame", allocatedMBPerGame)
+                & checkMax(harness, "MaxDealerUtilisation", dealerUtilisation);
+        System.out.println(pass ? "PASS" : "FAIL");
+        if (!pass) System.exit(1);
+    }
+
+    private static boolean isHarnessKey(String key) {
+        for (String harnessKey : HARNESS_KEYS)
+            if (harnessKey.equals(key)) return true;
+        return false;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static boolean checkMin(Properties harness, String key, double actual) {
+        String limit = harness.getProperty(key);
+        if (limit == null) return true;
+        boolean ok = actual >= Double.parseDouble(limit);
+        System.out.println(String.format(Locale.ROOT, "%s %s: %.2f (limit %s)", ok ? "ok  " : "FAIL", key, actual, limit));
+        return ok;
+    }
+
+    private static boolean checkMax(Properties harness, String key, double actual) {
+        String limit = harness.getProperty(key);
+        if (limit == null) return true;
+        boolean ok = actual <= Double.parseDouble(limit);
+        System.out.println(String.format(Locale.ROOT, "%s %s: %.2f (limit %s)", ok ? "ok  " : "FAIL", key, actual, limit));
+        return ok;
+    }
+
+    private static void writeCsv(Path output, List<HeadlessGame.Result> results) throws IOException {
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output))) {
+            out.println("game,duration_ms,claims,sets,claims_per_s,sets_per_s,claim_p50_us,claim_p90_us,claim_p99_us,claim_max_us,dealer_utilisation,allocated_bytes");
+            for (int i = 0; i < results.size(); i++) {
+                HeadlessGame.Result result = results.get(i);
+                GameMetrics metrics = result.metrics;
+                LatencyHistogram claimToVerdict = metrics.latency(GameMetrics.Stage.CLAIM_TO_VERDICT);
+                double seconds = seconds(result.durationNanos);
+                out.println(String.format(Locale.ROOT, "%d,%.1f,%d,%d,%.2f,%.2f,%.1f,%.1f,%.1f,%.1f,%.4f,%d",
+                        i + 1, result.durationNanos / 1e6, metrics.claims.sum(), metrics.sets.sum(),
+                        metrics.claims.sum() / seconds, metrics.sets.sum() / seconds,
+                        claimToVerdict.percentile(50) / 1000.0, claimToVerdict.percentile(90) / 1000.0,
+                        claimToVerdict.percentile(99) / 1000.0, claimToVerdict.max() / 1000.0,
+                        metrics.dealerUtilisation(), metrics.allocatedBytes.sum()));
+            }
+        }
+    }
+}
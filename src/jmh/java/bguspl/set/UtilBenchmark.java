@@ -0,0 +1,72 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmarks of the set logic in UtilImpl: testing a single set and searching for sets, across board/deck sizes and
+ * feature counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    @Param({"3", "4", "5"})
+    public int featureCount;
+
+    /**
+     * The number of cards to search in (12 = a regular board, larger values = the dealer's deck).
+     * Capped at the deck size of the feature count.
+     */
+    @Param({"12", "21", "81"})
+    public int cards;
+
+    private Util util;
+    private List<Integer> deck;
+    private int[] legalSet;
+    private int[] illegalSet;
+
+    @Setup
+    public void setUp() {
+        Env env = BenchmarkEnv.create(BenchmarkEnv.properties(featureCount, 2));
+        util = env.util;
+
+        List<Integer> all = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(all, new Random(42));
+        deck = new ArrayList<>(all.subList(0, Math.min(cards, all.size())));
+
+        legalSet = util.findSets(all, 1).get(0);
+        illegalSet = new int[]{0, 1, 3};
+    }
+
+    @Benchmark
+    public boolean testSetLegal() {
+        return util.testSet(legalSet);
+    }
+
+    @Benchmark
+    public boolean testSetIllegal() {
+        return util.testSet(illegalSet);
+    }
+
+    @Benchmark
+    public List<int[]> findFirstSet() {
+        return util.findSets(deck, 1);
+    }
+
+    @Benchmark
+    public List<int[]> findAllSets() {
+        return util.findSets(deck, Integer.MAX_VALUE);
+    }
+}
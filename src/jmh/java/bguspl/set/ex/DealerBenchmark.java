@@ -0,0 +1,69 @@
+package bguspl.set.ex;
+
+import bguspl.set.BenchmarkEnv;
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the dealer: verifying claims (Dealer.CheckCards) and drawing/returning the board from/to the deck.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DealerBenchmark {
+
+    @Param({"3", "4"})
+    public int featureCount;
+
+    private Env env;
+    private Table table;
+    private Dealer dealer;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        env = BenchmarkEnv.create(BenchmarkEnv.properties(featureCount, 2));
+        Player[] players = new Player[env.config.players];
+        table = new Table(env);
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+        dealer.placeCardsOnTable();
+    }
+
+    @State(Scope.Thread)
+    public static class Claim {
+
+        /**
+         * Puts player 0's tokens on a set, reshuffling the board first if the deck ran out.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(DealerBenchmark benchmark) {
+            Table table = benchmark.table;
+            Queue<Integer> slots = table.getSetOnBoardSlots();
+            if (slots.isEmpty() || table.countCards() < benchmark.env.config.tableSize) {
+                benchmark.dealer.removeAllCardsFromTable();
+                benchmark.dealer.placeCardsOnTable();
+                slots = table.getSetOnBoardSlots();
+            }
+            for (int slot : slots)
+                table.placeToken(0, slot);
+        }
+    }
+
+    @Benchmark
+    public void checkCardsLegalSet(Claim claim) {
+        dealer.CheckCards(0);
+    }
+
+    @Benchmark
+    public void drawAndReturnBoard() {
+        dealer.removeAllCardsFromTable();
+        dealer.placeCardsOnTable();
+    }
+}
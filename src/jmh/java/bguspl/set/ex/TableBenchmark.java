@@ -0,0 +1,71 @@
+package bguspl.set.ex;
+
+import bguspl.set.BenchmarkEnv;
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks of placing and removing tokens on the table while 1 to N player threads contend on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+
+    /**
+     * Enough players for every benchmark thread to act as a different player.
+     */
+    private static final int PLAYERS = 64;
+
+    Table table;
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        Env env = BenchmarkEnv.create(BenchmarkEnv.properties(4, PLAYERS));
+        table = new Table(env);
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            table.placeCard(slot, slot);
+    }
+
+    @State(Scope.Thread)
+    public static class PlayerState {
+        int player;
+        int slot;
+
+        @Setup
+        public void setUp(TableBenchmark benchmark) {
+            player = benchmark.nextPlayer.getAndIncrement() % PLAYERS;
+            slot = player % benchmark.table.slotToCard.length;
+        }
+    }
+
+    private boolean toggleToken(PlayerState state) {
+        table.placeToken(state.player, state.slot);
+        return table.removeToken(state.player, state.slot);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean placeAndRemoveToken1Thread(PlayerState state) {
+        return toggleToken(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean placeAndRemoveToken4Threads(PlayerState state) {
+        return toggleToken(state);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean placeAndRemoveTokenMaxThreads(PlayerState state) {
+        return toggleToken(state);
+    }
+}
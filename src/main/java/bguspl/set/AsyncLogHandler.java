@@ -0,0 +1,229 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A logging handler that never makes game threads wait for the disk.
+ * Records are copied into a lock-free ring of pre-sized entries; a background writer thread formats them and writes
+ * them to the log file in batches (flushing once per batch). When the ring is full, records are either dropped
+ * (and counted) or the logging thread waits for room, according to the overflow policy.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * The number of characters of a message kept in an entry (longer messages are truncated).
+     */
+    private static final int MESSAGE_CAPACITY = 256;
+
+    private static class Entry {
+        long millis;
+        Level level;
+        final char[] message = new char[MESSAGE_CAPACITY];
+        int length;
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * The position each entry is ready for: pos for a producer (free), pos + 1 for the writer (published).
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // writer thread only
+
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean dropOnOverflow;
+    private volatile boolean writerParked;
+    private final Queue<Thread> blocked = new ConcurrentLinkedQueue<>(); // producers waiting for room
+    private volatile boolean closed;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param file     - the log file to write to (created or truncated).
+     * @param capacity - the number of records the ring can hold (rounded up to a power of 2).
+     * @throws IOException - if the log file cannot be opened.
+     */
+    public AsyncLogHandler(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        entries = new Entry[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        dropOnOverflow = true;
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        writer = new Thread(this::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param dropOnOverflow - true to drop records when the ring is full, false to make the logging thread wait.
+     */
+    public void setDropOnOverflow(boolean dropOnOverflow) {
+        this.dropOnOverflow = dropOnOverflow;
+    }
+
+    /**
+     * @return - the number of records dropped because the ring was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        String message = record.getMessage();
+        if (message == null) message = "";
+
+        for (;;) {
+            long pos = tail.get();
+            int i = (int) (pos & mask);
+            long available = sequences.get(i) - pos;
+            if (available == 0) {
+                if (!tail.compareAndSet(pos, pos + 1)) continue;
+                Entry entry = entries[i];
+                entry.millis = millis(record);
+                entry.level = record.getLevel();
+                entry.length = Math.min(message.length(), MESSAGE_CAPACITY);
+                message.getChars(0, entry.length, entry.message, 0);
+                sequences.set(i, pos + 1);
+                if (writerParked) LockSupport.unpark(writer);
+                return;
+            }
+            if (available < 0) { // full
+                if (dropOnOverflow || closed) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                awaitRoom(i, pos);
+            }
+        }
+    }
+
+    /**
+     * Parks the calling thread until the writer frees the entry at a position (or the handler is closed).
+     */
+    private void awaitRoom(int i, long pos) {
+        Thread self = Thread.currentThread();
+        blocked.add(self);
+        LockSupport.unpark(writer);
+        if (sequences.get(i) - pos < 0 && !closed)
+            LockSupport.park(this); // until the writer frees an entry (see writeLoop) or the handler is closed
+        blocked.remove(self);
+    }
+
+    private void wakeBlocked() {
+        for (Thread producer : blocked)
+            LockSupport.unpark(producer);
+    }
+
+    /**
+     * The record's time as the milliseconds Java 8 has (LogRecord.getInstant is Java 9+).
+     */
+    @SuppressWarnings("deprecation")
+    private static long millis(LogRecord record) {
+        return record.getMillis();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void setMillis(LogRecord record, long millis) {
+        record.setMillis(millis);
+    }
+
+    private void writeLoop() {
+        LogRecord scratch = new LogRecord(Level.INFO, "");
+        while (true) {
+            int written = 0;
+            for (;;) {
+                int i = (int) (head & mask);
+                if (sequences.get(i) != head + 1) break;
+                Entry entry = entries[i];
+                setMillis(scratch, entry.millis);
+                scratch.setLevel(entry.level);
+                scratch.setMessage(new String(entry.message, 0, entry.length));
+                sequences.set(i, head + mask + 1);
+                head++;
+                if (!blocked.isEmpty()) wakeBlocked();
+                write(scratch);
+                written++;
+            }
+            if (written > 0) {
+                flushQuietly();
+                continue;
+            }
+            if (closed) break;
+            writerParked = true;
+            if (sequences.get((int) (head & mask)) != head + 1 && !closed)
+                LockSupport.park(this); // until a record is published (see publish) or the handler is closed
+            writerParked = false;
+        }
+        flushQuietly();
+    }
+
+    private void write(LogRecord record) {
+        try {
+            String text = getFormatter() != null ? getFormatter().format(record) : record.getMessage() + System.lineSeparator();
+            out.write(text);
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    /**
+     * Nothing to do: the writer thread flushes after every batch.
+     */
+    @Override
+    public void flush() {
+        if (writerParked) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes all the pending records and closes the log file.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        wakeBlocked();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (dropped.get() > 0)
+                out.write("[log] " + dropped.get() + " records dropped (log buffer full)" + System.lineSeparator());
+            out.close();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * A hashed map from card ids to small non negative values (e.g. slots), for the set searches: its memory is
+ * proportional to the cards put in it rather than to the deck, so it stays small for large variants (a deck of tens
+ * of thousands of cards and a table of a hundred).
+ * <p>
+ * Open addressing with linear probing in a power of two table, grown when half full. Not thread safe.
+ */
+public final class CardMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public CardMap() {
+        this(8);
+    }
+
+    /**
+     * @param expected - the number of cards expected to be put (the map grows beyond it if needed).
+     */
+    public CardMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private int home(int card) {
+        int hash = card * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & (keys.length - 1);
+    }
+
+    private int index(int card) {
+        int mask = keys.length - 1;
+        int i = home(card);
+        while (keys[i] != EMPTY && keys[i] != card)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * @param card  - a card id (not negative).
+     * @param value - its value (not negative).
+     */
+    public void put(int card, int value) {
+        int i = index(card);
+        if (keys[i] == EMPTY) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+                i = index(card);
+            }
+            keys[i] = card;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * @return - the card's value, or -1 if it is not in the map.
+     */
+    public int get(int card) {
+        if (card < 0) return -1;
+        int i = index(card);
+        return keys[i] == EMPTY ? -1 : values[i];
+    }
+
+    /**
+     * @return - true iff the card is in the map.
+     */
+    public boolean contains(int card) {
+        return get(card) >= 0;
+    }
+
+    /**
+     * Removes the card (if it is in the map), shifting back the cards probed after it.
+     */
+    public void remove(int card) {
+        int mask = keys.length - 1;
+        int i = index(card);
+        if (keys[i] == EMPTY) return;
+        size--;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = home(keys[j]);
+            // move the card at j back into the hole at i if its home is not in (i, j] (cyclically)
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+    }
+
+    /**
+     * @return - the number of cards in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the cards (keeping the capacity).
+     */
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY) {
+                int j = index(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+    }
+}
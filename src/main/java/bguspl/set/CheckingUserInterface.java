@@ -0,0 +1,305 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A user interface that displays nothing and checks its calls against the events of a recorded game (see Replay):
+ * the cards placed, removed and moved, the tokens placed and removed, the scores set, the freezes started and the
+ * winners announced. It also tracks the players' freezes, so the replay knows when a press can be delivered.
+ * <p>
+ * The dealer's calls are checked in the recorded order; the tokens and freezes of each player are checked in that
+ * player's recorded order (the players' threads interleave differently from run to run).
+ */
+public class CheckingUserInterface extends UserInterfaceHeadless {
+
+    /**
+     * The number of mismatches kept (the rest are only counted).
+     */
+    private static final int MAX_REPORTED = 20;
+
+    /**
+     * The expected calls of one kind, checked in order as they are made.
+     */
+    private final class Calls {
+
+        private final String name;
+        private final EventJournal.Type[] types;
+        private final int[] keys;
+        private final int[] values;
+        private final AtomicInteger made = new AtomicInteger();
+
+        /**
+         * @param name   - the calls' name (for the mismatches).
+         * @param player - the player whose events are expected (-1 for everyone's).
+         * @param kinds  - the event types expected.
+         */
+        Calls(String name, int player, EventJournal.Type... kinds) {
+            this.name = name;
+            int count = 0;
+            for (int i = 0; i < eventTypes.length; i++)
+                if (expected(i, player, kinds)) count++;
+            types = new EventJournal.Type[count];
+            keys = new int[count];
+            values = new int[count];
+            for (int i = 0, j = 0; i < eventTypes.length; i++)
+                if (expected(i, player, kinds)) {
+                    types[j] = eventTypes[i];
+                    keys[j] = eventSlots[i] >= 0 ? eventSlots[i] : eventPlayers[i];
+                    values[j++] = eventValues[i];
+                }
+        }
+
+        private boolean expected(int event, int player, EventJournal.Type[] kinds) {
+            if (player >= 0 && eventPlayers[event] != player) return false;
+            if (eventTypes[event] == EventJournal.Type.FREEZE && eventValues[event] <= 0) return false; // never shown
+            for (EventJournal.Type kind : kinds)
+                if (eventTypes[event] == kind) return true;
+            return false;
+        }
+
+        /**
+         * @param type  - the event type of the call.
+         * @param key   - the slot of the call (the player if it has no slot).
+         * @param value - the card, score or freeze time of the call (0 if none).
+         */
+        void check(EventJournal.Type type, int key, int value) {
+            int i = made.getAndIncrement();
+            if (i >= types.length)
+                mismatch(name + " #" + i + ": unexpected " + describe(type, key, value));
+            else if (types[i] != type || keys[i] != key || values[i] != value)
+                mismatch(name + " #" + i + ": expected " + describe(types[i], keys[i], values[i])
+                        + ", got " + describe(type, key, value));
+        }
+
+        int made() {
+            return made.get();
+        }
+
+        void checkComplete() {
+            if (made() < types.length)
+                mismatch("only " + made() + " of " + types.length + " recorded " + name + " calls were made");
+        }
+    }
+
+    private static String describe(EventJournal.Type type, int key, int value) {
+        switch (type) {
+            case CARD_PLACED:
+            case CARD_MOVED:
+                return "card " + value + " in slot " + key;
+            case CARD_REMOVED:
+                return "card " + value + " out of slot " + key;
+            case TOKEN_PLACED:
+                return "token on slot " + key;
+            case TOKEN_REMOVED:
+                return "token off slot " + key;
+            case SCORE:
+                return "score " + value + " for player " + key;
+            case FREEZE:
+                return "freeze of " + value + "ms";
+            default:
+                return type + " " + key + " " + value;
+        }
+    }
+
+    private final EventJournal.Type[] eventTypes;
+    private final int[] eventPlayers;
+    private final int[] eventSlots;
+    private final int[] eventValues;
+
+    private final Calls placed;
+    private final Calls removed;
+    private final Calls moved;
+    private final Calls scored;
+    private final Calls[] tokens;
+    private final Calls[] freezeTimes;
+    private final int[] winners;
+    private volatile boolean announced;
+
+    /**
+     * The cards the user interface shows, by slot (dealer thread only): removing an empty slot is not a change.
+     */
+    private final CardMap shown = new CardMap();
+
+    private final AtomicIntegerArray freezes;
+    private final AtomicIntegerArray frozen;
+
+    private final List<String> mismatches = new ArrayList<>();
+    private int mismatchCount;
+
+    /**
+     * @param players - the number of players.
+     * @param types   - the types of the recorded events, in order.
+     * @param player  - the players of the recorded events (-1 if none).
+     * @param slot    - the slots of the recorded events (-1 if none).
+     * @param value   - the values of the recorded events (see EventJournal).
+     */
+    public CheckingUserInterface(int players, EventJournal.Type[] types, int[] player, int[] slot, int[] value) {
+        eventTypes = types;
+        eventPlayers = player;
+        eventSlots = slot;
+        eventValues = value;
+        placed = new Calls("placeCard", -1, EventJournal.Type.CARD_PLACED);
+        removed = new Calls("removeCard", -1, EventJournal.Type.CARD_REMOVED);
+        moved = new Calls("moveCards", -1, EventJournal.Type.CARD_MOVED);
+        scored = new Calls("setScore", -1, EventJournal.Type.SCORE);
+        tokens = new Calls[players];
+        freezeTimes = new Calls[players];
+        for (int i = 0; i < players; i++) {
+            tokens[i] = new Calls("player " + i + " token", i, EventJournal.Type.TOKEN_PLACED, EventJournal.Type.TOKEN_REMOVED);
+            freezeTimes[i] = new Calls("player " + i + " setFreeze", i, EventJournal.Type.FREEZE);
+        }
+        winners = recordedWinners(players);
+        freezes = new AtomicIntegerArray(players);
+        frozen = new AtomicIntegerArray(players);
+    }
+
+    /**
+     * @return - the players with the top final score, or null if the recorded game did not end.
+     */
+    private int[] recordedWinners(int players) {
+        int[] scores = new int[players];
+        boolean ended = false;
+        for (int i = 0; i < eventTypes.length; i++) {
+            if (eventTypes[i] == EventJournal.Type.SCORE) scores[eventPlayers[i]] = eventValues[i];
+            if (eventTypes[i] == EventJournal.Type.GAME_END) ended = true;
+        }
+        if (!ended) return null;
+        int max = Arrays.stream(scores).max().orElse(0);
+        int[] top = new int[players];
+        int count = 0;
+        for (int i = 0; i < players; i++)
+            if (scores[i] == max) top[count++] = i;
+        return Arrays.copyOf(top, count);
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        placed.check(EventJournal.Type.CARD_PLACED, slot, card);
+        shown.put(slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        int card = shown.get(slot);
+        if (card < 0) return;
+        removed.check(EventJournal.Type.CARD_REMOVED, slot, card);
+        shown.remove(slot);
+    }
+
+    @Override
+    public void moveCards(int[] cards, int[] from, int[] to, int count) {
+        for (int i = 0; i < count; i++) {
+            moved.check(EventJournal.Type.CARD_MOVED, to[i], cards[i]);
+            shown.remove(from[i]);
+            shown.put(to[i], cards[i]);
+        }
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        tokens[player].check(EventJournal.Type.TOKEN_PLACED, slot, 0);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        tokens[player].check(EventJournal.Type.TOKEN_REMOVED, slot, 0);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        scored.check(EventJournal.Type.SCORE, player, score);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        if (millies > 0) {
+            if (frozen.get(player) == 0) {
+                frozen.set(player, 1);
+                freezeTimes[player].check(EventJournal.Type.FREEZE, player, (int) millies);
+                freezes.incrementAndGet(player);
+            }
+        } else frozen.set(player, 0);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        int[] announcedWinners = players.clone();
+        Arrays.sort(announcedWinners);
+        if (winners == null)
+            mismatch("unexpected winners " + Arrays.toString(announcedWinners) + " (the recorded game did not end)");
+        else if (!Arrays.equals(winners, announcedWinners))
+            mismatch("expected winners " + Arrays.toString(winners) + ", got " + Arrays.toString(announcedWinners));
+        announced = true;
+    }
+
+    /**
+     * Reports a difference that the user interface cannot see (e.g. a stalled replay or a different final score).
+     *
+     * @param description - what differs.
+     */
+    public synchronized void mismatch(String description) {
+        if (mismatchCount++ < MAX_REPORTED) mismatches.add(description);
+    }
+
+    public int placed() {
+        return placed.made();
+    }
+
+    public int scored() {
+        return scored.made();
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the number of freezes the player started so far.
+     */
+    public int freezes(int player) {
+        return freezes.get(player);
+    }
+
+    public boolean isFrozen(int player) {
+        return frozen.get(player) != 0;
+    }
+
+    /**
+     * @return - true iff the recorded game ended (and so the replayed one should announce the winners).
+     */
+    public boolean expectsWinners() {
+        return winners != null;
+    }
+
+    public boolean announced() {
+        return announced;
+    }
+
+    /**
+     * Checks that every expected call was made.
+     */
+    public void checkComplete() {
+        placed.checkComplete();
+        removed.checkComplete();
+        moved.checkComplete();
+        scored.checkComplete();
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i].checkComplete();
+            freezeTimes[i].checkComplete();
+        }
+        if (winners != null && !announced)
+            mismatch("the winners " + Arrays.toString(winners) + " were not announced");
+    }
+
+    public synchronized int mismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return - the first mismatches (up to MAX_REPORTED).
+     */
+    public synchronized List<String> mismatches() {
+        return new ArrayList<>(mismatches);
+    }
+}
@@ -36,6 +36,11 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The largest deck supported (e.g. 10 features of 3 values are 59,049 cards).
+     */
+    public static final int MAX_DECK_SIZE = 1 << 20;
+
     /**
      * The number of human players in the game.
      */
@@ -56,6 +61,67 @@ public class Config {
      */
     public final boolean hints;
 
+    /**
+     * What to do with a key press when the player's queue of pending presses is full
+     * (DropNewest, DropOldest or Coalesce)
+     */
+    public final String inputOverflowPolicy;
+
+    /**
+     * Whether to expose the game metrics as JMX MBeans
+     */
+    public final boolean jmx;
+
+    /**
+     * Whether to record every game event in a binary journal file (in the logs directory)
+     */
+    public final boolean journal;
+
+    /**
+     * The size (in megabytes) of the journal file (events that do not fit are dropped)
+     */
+    public final int journalSizeMB;
+
+    /**
+     * The TCP port remote players connect to (0 to run without a network server, see NetworkServer)
+     */
+    public final int networkPort;
+
+    /**
+     * The number of milliseconds between the frames of the spectator feed, and between its snapshots (see SpectatorFeed)
+     */
+    public final long spectatorTickMillis;
+    public final long spectatorSnapshotMillis;
+
+    /**
+     * The seed of the game's random generators (a new one is picked and logged if none is configured)
+     */
+    public final long seed;
+
+    /**
+     * Whether the random computer players take turns (one press at a time, each waiting for the press to be handled and
+     * for the verdict on its claim), so a seeded game does the same work every run
+     */
+    public final boolean deterministicScheduling;
+
+    /**
+     * How each computer player plays (by player id): Random (random key presses) or Smart (look for sets on the table)
+     * Note: configured as a comma separated list for the computer players in order; the last entry is used for the rest
+     */
+    public final String[] computerPlayerStrategy;
+
+    /**
+     * The mean and the standard deviation (in milliseconds) of a smart computer player's time to press a key
+     */
+    public final long botReactionMillis;
+    public final long botReactionDeviationMillis;
+
+    /**
+     * The probability that each smart computer player (by player id) goes for a real set (and not for random cards)
+     * Note: configured like the strategies
+     */
+    public final double[] botSkill;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -66,6 +132,12 @@ public class Config {
      */
     public final long turnTimeoutWarningMillis;
 
+    /**
+     * The number of milliseconds between countdown updates during the warning (when it shows hundredths of a
+     * second); the rest of the countdown is updated once a second.
+     */
+    public final long countdownRefreshMillis;
+
     /**
      * The number of milliseconds a player gets frozen for when he scores a point
      */
@@ -77,7 +149,8 @@ public class Config {
     public final long pointFreezeMillis;
 
     /**
-     * The number of milliseconds to delay before removing/placing a card on the table
+     * The number of milliseconds to delay before removing/placing cards on the table (once per deal; the window shows
+     * the cards of a deal this far apart)
      */
     public final long tableDelayMillis;
 
@@ -107,6 +180,13 @@ public class Config {
      */
     public final int tableSize;
 
+    /**
+     * The number of slots that can be added to the table grid when there is no set on it (featureSize at a time), and
+     * the largest the table can get
+     */
+    public final int maxExtraSlots;
+    public final int maxTableSize;
+
     /**
      * The width (in pixels) of each cell
      */
@@ -186,6 +266,7 @@ public class Config {
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        Main.setLogOverflowPolicy(logger, !"Block".equalsIgnoreCase(properties.getProperty("LogOverflowPolicy", "Drop")));
 
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
@@ -196,6 +277,9 @@ public class Config {
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
+        if (featureSize < 2 || featureCount < 1 || Math.pow(featureSize, featureCount) > MAX_DECK_SIZE)
+            throw new IllegalArgumentException("invalid deck: " + featureCount + " features of " + featureSize
+                    + " values (at most " + MAX_DECK_SIZE + " cards)");
         deckSize = (int) Math.pow(featureSize, featureCount);
 
         // gameplay settings
@@ -204,8 +288,30 @@ public class Config {
         players = humanPlayers + computerPlayers;
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        inputOverflowPolicy = properties.getProperty("InputOverflowPolicy", "DropNewest");
+        jmx = Boolean.parseBoolean(properties.getProperty("Jmx", "True"));
+        journal = Boolean.parseBoolean(properties.getProperty("Journal", "False"));
+        journalSizeMB = Integer.parseInt(properties.getProperty("JournalSizeMB", "64"));
+        networkPort = Integer.parseInt(properties.getProperty("NetworkPort", "0"));
+        spectatorTickMillis = (long) (Double.parseDouble(properties.getProperty("SpectatorTickSeconds", "0.1")) * 1000.0);
+        spectatorSnapshotMillis = (long) (Double.parseDouble(properties.getProperty("SpectatorSnapshotSeconds", "5")) * 1000.0);
+        String seedString = properties.getProperty("Seed", "").trim();
+        seed = seedString.isEmpty() ? System.nanoTime() ^ System.identityHashCode(properties) : Long.parseLong(seedString);
+        logger.info("game seed: " + seed);
+        deterministicScheduling = Boolean.parseBoolean(properties.getProperty("DeterministicScheduling", "False"));
+        computerPlayerStrategy = perComputerPlayer(properties.getProperty("ComputerPlayerStrategy", "Random"));
+        botReactionMillis = (long) (Double.parseDouble(properties.getProperty("BotReactionSeconds", "0.8")) * 1000.0);
+        botReactionDeviationMillis = (long) (Double.parseDouble(properties.getProperty("BotReactionDeviationSeconds", "0.2")) * 1000.0);
+        String[] skills = perComputerPlayer(properties.getProperty("BotSkill", "0.9"));
+        botSkill = new double[players];
+        for (int i = 0; i < players; i++) {
+            botSkill[i] = Double.parseDouble(skills[i]);
+            if (botSkill[i] < 0 || botSkill[i] > 1)
+                logger.severe("invalid bot skill: " + botSkill[i] + " (should be between 0 and 1)");
+        }
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
+        countdownRefreshMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("CountdownRefreshSeconds", "0.01")) * 1000.0));
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
@@ -219,6 +325,10 @@ public class Config {
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
         tableSize = rows * columns;
+        maxExtraSlots = Integer.parseInt(properties.getProperty("MaxExtraSlots", "0"));
+        if (maxExtraSlots < 0)
+            throw new IllegalArgumentException("MaxExtraSlots must not be negative: " + maxExtraSlots);
+        maxTableSize = tableSize + maxExtraSlots;
         cellWidth = Integer.parseInt(properties.getProperty("CellWidth", "258"));
         cellHeight = Integer.parseInt(properties.getProperty("CellHeight", "167"));
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
@@ -233,14 +343,29 @@ public class Config {
             String playerKeysString = properties.getProperty("PlayerKeys" + (i + 1), defaultCodes);
             if (playerKeysString.length() > 0) {
                 String[] codes = playerKeysString.split(",");
-                if (codes.length != tableSize)
+                if (codes.length < tableSize || codes.length > maxTableSize)
                     logger.severe("warning: player " + (i + 1) + " keys (" + codes.length + ") mismatch table size (" + tableSize + ").");
-                for (int j = 0; j < Math.min(codes.length, tableSize); ++j) // parse the key codes string
+                if (codes.length > tableSize) // keys for the extra slots
+                    playerKeys[i] = new int[Math.min(codes.length, maxTableSize)];
+                for (int j = 0; j < Math.min(codes.length, playerKeys[i].length); ++j) // parse the key codes string
                     playerKeys[i][j] = Integer.parseInt(codes[j]);
             }
         }
     }
 
+    /**
+     * Spreads a comma separated list over the computer players (the last entry is used for the remaining ones).
+     *
+     * @return - an entry for every player id (the human players get the first entry).
+     */
+    private String[] perComputerPlayer(String list) {
+        String[] entries = list.split(",");
+        String[] perPlayer = new String[players];
+        for (int i = 0; i < players; i++)
+            perPlayer[i] = entries[Math.min(Math.max(0, i - humanPlayers), entries.length - 1)].trim();
+        return perPlayer;
+    }
+
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
@@ -8,11 +8,25 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final GameMetrics metrics;
+    public final EventJournal journal;
+    public final GameRandom random;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new GameMetrics(config.players));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameMetrics metrics) {
+        this(logger, config, ui, util, metrics, EventJournal.DISABLED);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameMetrics metrics, EventJournal journal) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.random = new GameRandom(config.seed, config.players);
     }
 }
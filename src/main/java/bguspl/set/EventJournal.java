@@ -0,0 +1,208 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A compact binary journal of every state-changing game event, appended through a memory-mapped file.
+ * <p>
+ * Layout: a HEADER_SIZE byte header (magic, version, record size, start wall-clock time, start nanoTime) followed by
+ * fixed-width RECORD_SIZE byte little-endian records:
+ * <pre>
+ *   long  nanos   - System.nanoTime of the event
+ *   byte  type    - the Type ordinal + 1 (0 = never written, the reader stops there)
+ *   byte  unused
+ *   short player  - the player id (-1 if none)
+ *   int   slot    - the table slot (-1 if none)
+ *   int   value   - event specific (card id, score, freeze millis, valid flag...)
+ *   int   unused
+ * </pre>
+ * Writers reserve a record with a single atomic add and fill it with absolute puts (no locks, no allocation); the
+ * type byte is written last, so a record cut off by a crash is never read. The data reaches the file through the
+ * page cache, so a crash of the process loses nothing and a crash of the machine loses at most what was not flushed.
+ */
+public class EventJournal {
+
+    /**
+     * The journaled event types.
+     */
+    public enum Type {
+        GAME_START, GAME_END, KEY_PRESS, CARD_PLACED, CARD_REMOVED, TOKEN_PLACED, TOKEN_REMOVED, CLAIM, VERDICT,
+        SCORE, FREEZE, RESHUFFLE, CARD_MOVED
+    }
+
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 24;
+    private static final long MAGIC = 0x4c4e524a54455342L; // "BSETJRNL" (little-endian)
+    private static final int VERSION = 1;
+    private static final Type[] TYPES = Type.values();
+
+    /**
+     * A journal that records nothing.
+     */
+    public static final EventJournal DISABLED = new EventJournal();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private final AtomicLong position = new AtomicLong(HEADER_SIZE);
+    private final LongAdder dropped = new LongAdder();
+
+    private EventJournal() {
+        channel = null;
+        buffer = null;
+        capacity = 0;
+    }
+
+    private EventJournal(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, RECORD_SIZE);
+        buffer.putLong(16, System.currentTimeMillis());
+        buffer.putLong(24, System.nanoTime());
+    }
+
+    /**
+     * Creates (or truncates) a journal file and maps it.
+     *
+     * @param file  - the journal file.
+     * @param bytes - the size of the file; events that do not fit are dropped (and counted).
+     * @return - the open journal.
+     * @throws IOException - if the file cannot be created or mapped.
+     */
+    public static EventJournal open(Path file, long bytes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        long size = Math.max(HEADER_SIZE + RECORD_SIZE, bytes - (bytes - HEADER_SIZE) % RECORD_SIZE);
+        return new EventJournal(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Appends an event. Lock free and allocation free; a no-op for the disabled journal.
+     *
+     * @param type   - the event type.
+     * @param player - the player id (-1 if none).
+     * @param slot   - the table slot (-1 if none).
+     * @param value  - event specific value.
+     */
+    public void record(Type type, int player, int slot, int value) {
+        if (buffer == null) return;
+        long pos = position.getAndAdd(RECORD_SIZE);
+        if (pos + RECORD_SIZE > capacity) {
+            dropped.increment();
+            return;
+        }
+        int at = (int) pos;
+        buffer.putLong(at, System.nanoTime());
+        buffer.putShort(at + 10, (short) player);
+        buffer.putInt(at + 12, slot);
+        buffer.putInt(at + 16, value);
+        buffer.put(at + 8, (byte) (type.ordinal() + 1));
+    }
+
+    /**
+     * @return - the number of events dropped because the journal file was full.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Forces the journal pages written so far to the storage device.
+     */
+    public void flush() {
+        if (buffer != null) buffer.force();
+    }
+
+    /**
+     * Flushes the journal and closes the file.
+     */
+    public void close() {
+        if (buffer == null) return;
+        flush();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Reads the records of a journal file, in the order they were reserved.
+     */
+    public static class Reader {
+
+        private final ByteBuffer data;
+        private int at = HEADER_SIZE;
+
+        public final long startMillis;
+        public final long startNanos;
+
+        public Type type;
+        public long nanos;
+        public int player;
+        public int slot;
+        public int value;
+
+        public Reader(Path file) throws IOException {
+            data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.capacity() < HEADER_SIZE || data.getLong(0) != MAGIC)
+                throw new IOException(file + " is not an event journal");
+            if (data.getInt(8) != VERSION || data.getInt(12) != RECORD_SIZE)
+                throw new IOException(file + ": unsupported journal version");
+            startMillis = data.getLong(16);
+            startNanos = data.getLong(24);
+        }
+
+        /**
+         * Moves to the next record (and fills the public fields with it).
+         *
+         * @return - false if there are no more (complete) records.
+         */
+        public boolean next() {
+            if (at + RECORD_SIZE > data.capacity()) return false;
+            int t = data.get(at + 8);
+            if (t <= 0 || t > TYPES.length) return false;
+            type = TYPES[t - 1];
+            nanos = data.getLong(at);
+            player = data.getShort(at + 10);
+            slot = data.getInt(at + 12);
+            value = data.getInt(at + 16);
+            at += RECORD_SIZE;
+            return true;
+        }
+    }
+
+    /**
+     * Prints a journal file as CSV (nanos since the start, type, player, slot, value).
+     *
+     * @param args - the journal file.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: EventJournal <journal file>");
+            return;
+        }
+        Reader reader = new Reader(Paths.get(args[0]));
+        PrintStream out = System.out;
+        out.println("nanos,type,player,slot,value");
+        while (reader.next())
+            out.println((reader.nanos - reader.startNanos) + "," + reader.type + "," + reader.player + "," + reader.slot + "," + reader.value);
+    }
+}
@@ -0,0 +1,278 @@
+package bguspl.set;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Performance counters of a single game, updated by the game threads and read by benchmarks and monitoring tools.
+ */
+public class GameMetrics {
+
+    /**
+     * The stages of the claim pipeline, from a key press until the player gets its point or penalty.
+     */
+    public enum Stage {
+        /**
+         * Key press (Player.keyPressed) until the player thread takes it from its queue.
+         */
+        INPUT_QUEUE,
+        /**
+         * The player thread taking the press until its token is on the table (Table.placeToken).
+         */
+        TOKEN,
+        /**
+         * The claim (Table.playerFinished) until the dealer starts checking it (Dealer.checkClaims).
+         */
+        CLAIM_QUEUE,
+        /**
+         * The dealer checking the claim until the point/penalty is given.
+         */
+        VERIFY,
+        /**
+         * The claim until the point/penalty is given (CLAIM_QUEUE + VERIFY).
+         */
+        CLAIM_TO_VERDICT,
+        /**
+         * The key press that completed the claim until the point/penalty is given.
+         */
+        KEY_TO_VERDICT,
+        /**
+         * The time the player thread waits (parked) after making a claim, until the verdict.
+         */
+        VERDICT_WAIT
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final AtomicInteger nextGameId = new AtomicInteger();
+
+    /**
+     * A process-wide unique id of the game (used to name its MBean).
+     */
+    public final int gameId = nextGameId.incrementAndGet();
+
+    /**
+     * Latencies per stage of the whole game.
+     */
+    private final LatencyHistogram[] gameLatency;
+
+    /**
+     * Latencies per player and stage.
+     */
+    private final LatencyHistogram[][] playerLatency;
+
+    /**
+     * The number of claims (3 tokens placed) the players made.
+     */
+    public final LongAdder claimsReceived = new LongAdder();
+
+    /**
+     * The number of claims (3 tokens placed) the dealer verified.
+     */
+    public final LongAdder claims = new LongAdder();
+
+    /**
+     * The number of claims that were legal sets.
+     */
+    public final LongAdder sets = new LongAdder();
+
+    /**
+     * The number of claims discarded without a penalty because their cards were replaced before they were verified.
+     */
+    public final LongAdder staleClaims = new LongAdder();
+
+    /**
+     * The time the dealer thread spent sleeping (waiting for claims or for the timer).
+     */
+    public final LongAdder dealerSleepNanos = new LongAdder();
+
+    /**
+     * The number of iterations of the dealer's main loops.
+     */
+    public final LongAdder dealerIterations = new LongAdder();
+
+    /**
+     * The number of times the dealer thread woke up from sleeping.
+     */
+    public final LongAdder dealerWakeups = new LongAdder();
+
+    /**
+     * The number of times all the cards were returned from the table to the deck.
+     */
+    public final LongAdder reshuffles = new LongAdder();
+
+    /**
+     * The number of user interface calls passed on to the user interface.
+     */
+    public final LongAdder uiEvents = new LongAdder();
+
+    /**
+     * The number of user interface calls that were dropped (e.g. running without a user interface).
+     */
+    public final LongAdder uiEventsDropped = new LongAdder();
+
+    /**
+     * The number of set searches (Util.findSets) and the total time they took.
+     */
+    public final LongAdder solverCalls = new LongAdder();
+    public final LongAdder solverNanos = new LongAdder();
+
+    /**
+     * The number of bytes allocated by the game threads that already finished.
+     */
+    public final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * The total time each player was frozen (after a point or a penalty).
+     */
+    private final AtomicLongArray freezeNanos;
+
+    /**
+     * The number of penalties each player got.
+     */
+    private final AtomicLongArray penalties;
+
+    private volatile int cardsRemaining;
+    private volatile long dealerStartNanos;
+    private volatile long dealerStopNanos;
+
+    /**
+     * @param players - the number of players in the game.
+     */
+    public GameMetrics(int players) {
+        gameLatency = new LatencyHistogram[STAGES.length];
+        for (int i = 0; i < STAGES.length; i++)
+            gameLatency[i] = new LatencyHistogram();
+        playerLatency = new LatencyHistogram[players][STAGES.length];
+        for (int player = 0; player < players; player++)
+            for (int i = 0; i < STAGES.length; i++)
+                playerLatency[player][i] = new LatencyHistogram();
+        freezeNanos = new AtomicLongArray(players);
+        penalties = new AtomicLongArray(players);
+    }
+
+    public int players() {
+        return freezeNanos.length();
+    }
+
+    /**
+     * @return - the number of claims made but not verified yet.
+     */
+    public long claimQueueDepth() {
+        return Math.max(0, claimsReceived.sum() - claims.sum());
+    }
+
+    /**
+     * @param cards - the number of cards left in the dealer's deck.
+     */
+    public void setCardsRemaining(int cards) {
+        cardsRemaining = cards;
+    }
+
+    public int cardsRemaining() {
+        return cardsRemaining;
+    }
+
+    public void addFreeze(int player, long nanos) {
+        if (player >= 0 && player < freezeNanos.length()) freezeNanos.addAndGet(player, nanos);
+    }
+
+    public long freezeNanos(int player) {
+        return freezeNanos.get(player);
+    }
+
+    public void addPenalty(int player) {
+        if (player >= 0 && player < penalties.length()) penalties.incrementAndGet(player);
+    }
+
+    public long penalties(int player) {
+        return penalties.get(player);
+    }
+
+    /**
+     * Records the duration of a pipeline stage for a player (and the game). Allocation free.
+     *
+     * @param player - the player the stage belongs to.
+     * @param stage  - the pipeline stage.
+     * @param nanos  - the duration of the stage.
+     */
+    public void record(int player, Stage stage, long nanos) {
+        gameLatency[stage.ordinal()].record(nanos);
+        if (player >= 0 && player < playerLatency.length)
+            playerLatency[player][stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the time passed since a System.nanoTime timestamp (ignored if the timestamp is 0, i.e. unset).
+     */
+    public void recordSince(int player, Stage stage, long startNanos) {
+        if (startNanos != 0) record(player, stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return - the live histogram of a stage over the whole game.
+     */
+    public LatencyHistogram latency(Stage stage) {
+        return gameLatency[stage.ordinal()];
+    }
+
+    /**
+     * @return - the live histogram of a stage for a single player.
+     */
+    public LatencyHistogram latency(int player, Stage stage) {
+        return playerLatency[player][stage.ordinal()];
+    }
+
+    /**
+     * Logs the latency summary of every stage, for the game and for each player.
+     */
+    public void logLatencies(Logger logger) {
+        if (!logger.isLoggable(Level.INFO)) return;
+        for (Stage stage : STAGES)
+            logger.info("latency " + stage + ": " + latency(stage).summary());
+        for (int player = 0; player < playerLatency.length; player++)
+            for (Stage stage : STAGES)
+                if (latency(player, stage).count() > 0)
+                    logger.info("latency player " + (player + 1) + " " + stage + ": " + latency(player, stage).summary());
+    }
+
+    public void dealerStarted() {
+        dealerStartNanos = System.nanoTime();
+    }
+
+    public void dealerStopped() {
+        dealerStopNanos = System.nanoTime();
+    }
+
+    /**
+     * @return - the time the dealer thread ran so far (or in total, once it stopped).
+     */
+    public long dealerRunNanos() {
+        long start = dealerStartNanos;
+        if (start == 0) return 0;
+        long stop = dealerStopNanos;
+        return (stop != 0 ? stop : System.nanoTime()) - start;
+    }
+
+    /**
+     * @return - the fraction of its running time the dealer spent working rather than sleeping (0-1).
+     */
+    public double dealerUtilisation() {
+        long run = dealerRunNanos();
+        return run <= 0 ? 0 : Math.max(0, 1.0 - (double) dealerSleepNanos.sum() / run);
+    }
+
+    /**
+     * Called by a game thread right before it terminates to account for the memory it allocated.
+     */
+    public void threadFinished() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            long bytes = ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+            if (bytes > 0) allocatedBytes.add(bytes);
+        }
+    }
+}
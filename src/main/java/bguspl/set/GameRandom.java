@@ -0,0 +1,40 @@
+package bguspl.set;
+
+import java.util.SplittableRandom;
+
+/**
+ * The random generators of a game, all split from the game seed in a fixed order (the deck first, then one per
+ * player in id order), so a game seed determines the deck order and every computer player's choices.
+ */
+public class GameRandom {
+
+    private final SplittableRandom deck;
+    private final SplittableRandom[] players;
+
+    /**
+     * @param seed    - the game seed.
+     * @param players - the number of players.
+     */
+    public GameRandom(long seed, int players) {
+        SplittableRandom root = new SplittableRandom(seed);
+        deck = root.split();
+        this.players = new SplittableRandom[players];
+        for (int i = 0; i < players; i++)
+            this.players[i] = root.split();
+    }
+
+    /**
+     * @return - the generator of the dealer's draws (dealer thread only).
+     */
+    public SplittableRandom deck() {
+        return deck;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the generator of the player's computer moves (that player's AI thread only).
+     */
+    public SplittableRandom player(int player) {
+        return players[player];
+    }
+}
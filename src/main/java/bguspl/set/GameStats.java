@@ -0,0 +1,158 @@
+package bguspl.set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+/**
+ * Exposes the metrics of a single game over JMX (as bguspl.set:type=Game,id=N), so the load of a table can be
+ * watched live in JConsole or any other JMX client.
+ */
+public class GameStats implements GameStatsMBean {
+
+    private final GameMetrics metrics;
+
+    public GameStats(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers the MBeans of a game (and the host MBean, on first use).
+     *
+     * @param metrics - the metrics of the game.
+     * @param logger  - used to report registration failures.
+     * @return - the name the game MBean was registered under, or null if registration failed.
+     */
+    public static ObjectName register(GameMetrics metrics, Logger logger) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("bguspl.set:type=Game,id=" + metrics.gameId);
+            server.registerMBean(new GameStats(metrics), name);
+            HostStats.gameStarted(metrics);
+            return name;
+        } catch (JMException e) {
+            logger.warning("cannot register game MBean: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters the MBean of a finished game. Its metrics are still counted in the host MBean.
+     *
+     * @param name    - the name returned by register (ignored if null).
+     * @param metrics - the metrics of the game.
+     */
+    public static void unregister(ObjectName name, GameMetrics metrics) {
+        if (name == null) return;
+        HostStats.gameFinished(metrics);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {}
+    }
+
+    @Override
+    public long getClaimsReceived() {
+        return metrics.claimsReceived.sum();
+    }
+
+    @Override
+    public long getClaimsVerified() {
+        return metrics.claims.sum();
+    }
+
+    @Override
+    public long getValidClaims() {
+        return metrics.sets.sum();
+    }
+
+    @Override
+    public long getInvalidClaims() {
+        return getClaimsVerified() - getValidClaims() - getStaleClaims();
+    }
+
+    @Override
+    public long getStaleClaims() {
+        return metrics.staleClaims.sum();
+    }
+
+    @Override
+    public double getValidClaimRatio() {
+        long claims = getClaimsVerified();
+        return claims == 0 ? 0 : (double) getValidClaims() / claims;
+    }
+
+    @Override
+    public long getClaimQueueDepth() {
+        return metrics.claimQueueDepth();
+    }
+
+    @Override
+    public long getDealerLoopIterations() {
+        return metrics.dealerIterations.sum();
+    }
+
+    @Override
+    public long getDealerWakeups() {
+        return metrics.dealerWakeups.sum();
+    }
+
+    @Override
+    public double getDealerUtilisation() {
+        return metrics.dealerUtilisation();
+    }
+
+    @Override
+    public long getReshuffles() {
+        return metrics.reshuffles.sum();
+    }
+
+    @Override
+    public int getCardsRemaining() {
+        return metrics.cardsRemaining();
+    }
+
+    @Override
+    public long[] getPlayerFreezeMillis() {
+        long[] freeze = new long[metrics.players()];
+        for (int player = 0; player < freeze.length; player++)
+            freeze[player] = metrics.freezeNanos(player) / 1_000_000;
+        return freeze;
+    }
+
+    @Override
+    public long getUiEventsEmitted() {
+        return metrics.uiEvents.sum();
+    }
+
+    @Override
+    public long getUiEventsDropped() {
+        return metrics.uiEventsDropped.sum();
+    }
+
+    @Override
+    public long getSolverCalls() {
+        return metrics.solverCalls.sum();
+    }
+
+    @Override
+    public double getSolverMillis() {
+        return metrics.solverNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getClaimToVerdictP50Micros() {
+        return metrics.latency(GameMetrics.Stage.CLAIM_TO_VERDICT).percentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getClaimToVerdictP99Micros() {
+        return metrics.latency(GameMetrics.Stage.CLAIM_TO_VERDICT).percentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getKeyToVerdictP99Micros() {
+        return metrics.latency(GameMetrics.Stage.KEY_TO_VERDICT).percentile(99) / 1000.0;
+    }
+}
@@ -0,0 +1,56 @@
+package bguspl.set;
+
+/**
+ * The JMX management interface of a single game (see GameStats).
+ */
+public interface GameStatsMBean {
+
+    long getClaimsReceived();
+
+    long getClaimsVerified();
+
+    long getValidClaims();
+
+    long getInvalidClaims();
+
+    /**
+     * @return - the number of claims discarded (without a penalty) because their cards were replaced first.
+     */
+    long getStaleClaims();
+
+    /**
+     * @return - the fraction of verified claims that were legal sets (0-1).
+     */
+    double getValidClaimRatio();
+
+    long getClaimQueueDepth();
+
+    long getDealerLoopIterations();
+
+    long getDealerWakeups();
+
+    double getDealerUtilisation();
+
+    long getReshuffles();
+
+    int getCardsRemaining();
+
+    /**
+     * @return - the total time (milliseconds) each player was frozen, indexed by player id.
+     */
+    long[] getPlayerFreezeMillis();
+
+    long getUiEventsEmitted();
+
+    long getUiEventsDropped();
+
+    long getSolverCalls();
+
+    double getSolverMillis();
+
+    double getClaimToVerdictP50Micros();
+
+    double getClaimToVerdictP99Micros();
+
+    double getKeyToVerdictP99Micros();
+}
@@ -0,0 +1,116 @@
+package bguspl.set;
+
+import bguspl.set.ex.CardSource;
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A complete game (dealer, players and table) that runs without a window, for benchmarks and tools.
+ */
+public class HeadlessGame {
+
+    /**
+     * The outcome of a finished game.
+     */
+    public static class Result {
+        public final int[] scores;
+        public final long durationNanos;
+        public final GameMetrics metrics;
+
+        Result(int[] scores, long durationNanos, GameMetrics metrics) {
+            this.scores = scores;
+            this.durationNanos = durationNanos;
+            this.metrics = metrics;
+        }
+    }
+
+    public final Env env;
+    public final Table table;
+    public final Dealer dealer;
+    public final Player[] players;
+
+    /**
+     * @param logger - the game logger.
+     * @param config - the game configuration (human players are created as well, but get no input).
+     * @param ui     - the user interface (use UserInterfaceHeadless for none).
+     */
+    public HeadlessGame(Logger logger, Config config, UserInterface ui) {
+        this(logger, config, ui, null);
+    }
+
+    /**
+     * @param logger - the game logger.
+     * @param config - the game configuration (human players are created as well, but get no input).
+     * @param ui     - the user interface (use UserInterfaceHeadless for none).
+     * @param cards  - chooses the cards the dealer draws (null to draw from the seeded game generator).
+     */
+    public HeadlessGame(Logger logger, Config config, UserInterface ui, CardSource cards) {
+        this(logger, config, ui, cards, EventJournal.DISABLED);
+    }
+
+    /**
+     * @param logger  - the game logger.
+     * @param config  - the game configuration (human players are created as well, but get no input).
+     * @param ui      - the user interface (use UserInterfaceHeadless for none).
+     * @param cards   - chooses the cards the dealer draws (null to draw from the seeded game generator).
+     * @param journal - records the game events (EventJournal.DISABLED for none; the caller closes it).
+     */
+    public HeadlessGame(Logger logger, Config config, UserInterface ui, CardSource cards, EventJournal journal) {
+        GameMetrics metrics = new GameMetrics(config.players);
+        env = new Env(logger, config, ui, new UtilImpl(config, metrics), metrics, journal);
+        table = new Table(env);
+        players = new Player[config.players];
+        dealer = cards == null ? new Dealer(env, table, players) : new Dealer(env, table, players, cards);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+    }
+
+    /**
+     * Creates a silent game: no user interface and no logging.
+     *
+     * @param properties - the game configuration properties.
+     */
+    public HeadlessGame(Properties properties) {
+        this(silentLogger(), new Config(silentLogger(), withDefault(properties, "LogLevel", "OFF")), new UserInterfaceHeadless());
+    }
+
+    static Logger silentLogger() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        return logger;
+    }
+
+    static Properties withDefault(Properties properties, String key, String value) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        if (!copy.containsKey(key)) copy.put(key, value);
+        return copy;
+    }
+
+    /**
+     * Runs the game on a new dealer thread and waits for it to end.
+     *
+     * @return - the final scores and the game metrics.
+     * @throws InterruptedException - if the calling thread was interrupted while waiting (the game is terminated).
+     */
+    public Result play() throws InterruptedException {
+        long start = System.nanoTime();
+        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", env.logger);
+        dealerThread.startWithLog();
+        try {
+            dealerThread.joinWithLog();
+        } catch (InterruptedException e) {
+            dealer.terminate();
+            dealerThread.join();
+            throw e;
+        }
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++)
+            scores[i] = players[i].getScore();
+        return new Result(scores, System.nanoTime() - start, env.metrics);
+    }
+}
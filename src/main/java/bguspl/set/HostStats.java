@@ -0,0 +1,141 @@
+package bguspl.set;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Exposes the metrics of all the games of this process over JMX (as bguspl.set:type=Host).
+ * Running games are summed up live; finished games are folded into running totals.
+ */
+public class HostStats implements HostStatsMBean {
+
+    private static final HostStats instance = new HostStats();
+    private static volatile boolean registered;
+
+    private final Set<GameMetrics> running = ConcurrentHashMap.newKeySet();
+    private final LongAdder gamesStarted = new LongAdder();
+    private final LongAdder claimsReceived = new LongAdder();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder sets = new LongAdder();
+    private final LongAdder dealerWakeups = new LongAdder();
+    private final LongAdder reshuffles = new LongAdder();
+    private final LongAdder uiEvents = new LongAdder();
+    private final LongAdder uiEventsDropped = new LongAdder();
+    private final LongAdder solverCalls = new LongAdder();
+    private final LongAdder solverNanos = new LongAdder();
+
+    private HostStats() {}
+
+    private static void registerOnce() {
+        if (registered) return;
+        synchronized (HostStats.class) {
+            if (registered) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName("bguspl.set:type=Host"));
+            } catch (JMException ignored) {
+                // already registered by another class loader, or JMX is unavailable
+            }
+            registered = true;
+        }
+    }
+
+    static void gameStarted(GameMetrics metrics) {
+        registerOnce();
+        instance.gamesStarted.increment();
+        instance.running.add(metrics);
+    }
+
+    static void gameFinished(GameMetrics metrics) {
+        if (!instance.running.remove(metrics)) return;
+        instance.claimsReceived.add(metrics.claimsReceived.sum());
+        instance.claims.add(metrics.claims.sum());
+        instance.sets.add(metrics.sets.sum());
+        instance.dealerWakeups.add(metrics.dealerWakeups.sum());
+        instance.reshuffles.add(metrics.reshuffles.sum());
+        instance.uiEvents.add(metrics.uiEvents.sum());
+        instance.uiEventsDropped.add(metrics.uiEventsDropped.sum());
+        instance.solverCalls.add(metrics.solverCalls.sum());
+        instance.solverNanos.add(metrics.solverNanos.sum());
+    }
+
+    private long total(LongAdder finished, Function<GameMetrics, LongAdder> counter) {
+        long sum = finished.sum();
+        for (GameMetrics metrics : running)
+            sum += counter.apply(metrics).sum();
+        return sum;
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return gamesStarted.sum();
+    }
+
+    @Override
+    public int getGamesRunning() {
+        return running.size();
+    }
+
+    @Override
+    public long getClaimsReceived() {
+        return total(claimsReceived, m -> m.claimsReceived);
+    }
+
+    @Override
+    public long getClaimsVerified() {
+        return total(claims, m -> m.claims);
+    }
+
+    @Override
+    public long getValidClaims() {
+        return total(sets, m -> m.sets);
+    }
+
+    @Override
+    public double getValidClaimRatio() {
+        long verified = getClaimsVerified();
+        return verified == 0 ? 0 : (double) getValidClaims() / verified;
+    }
+
+    @Override
+    public long getClaimQueueDepth() {
+        long depth = 0;
+        for (GameMetrics metrics : running)
+            depth += metrics.claimQueueDepth();
+        return depth;
+    }
+
+    @Override
+    public long getDealerWakeups() {
+        return total(dealerWakeups, m -> m.dealerWakeups);
+    }
+
+    @Override
+    public long getReshuffles() {
+        return total(reshuffles, m -> m.reshuffles);
+    }
+
+    @Override
+    public long getUiEventsEmitted() {
+        return total(uiEvents, m -> m.uiEvents);
+    }
+
+    @Override
+    public long getUiEventsDropped() {
+        return total(uiEventsDropped, m -> m.uiEventsDropped);
+    }
+
+    @Override
+    public long getSolverCalls() {
+        return total(solverCalls, m -> m.solverCalls);
+    }
+
+    @Override
+    public double getSolverMillis() {
+        return total(solverNanos, m -> m.solverNanos) / 1e6;
+    }
+}
@@ -0,0 +1,33 @@
+package bguspl.set;
+
+/**
+ * The JMX management interface of the whole host (see HostStats).
+ */
+public interface HostStatsMBean {
+
+    long getGamesStarted();
+
+    int getGamesRunning();
+
+    long getClaimsReceived();
+
+    long getClaimsVerified();
+
+    long getValidClaims();
+
+    double getValidClaimRatio();
+
+    long getClaimQueueDepth();
+
+    long getDealerWakeups();
+
+    long getReshuffles();
+
+    long getUiEventsEmitted();
+
+    long getUiEventsDropped();
+
+    long getSolverCalls();
+
+    double getSolverMillis();
+}
@@ -0,0 +1,120 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent, allocation-free histogram of latencies (in nanoseconds) with log-linear buckets, in the spirit of
+ * HdrHistogram: values below 64 are exact, larger values are kept with 32 sub-buckets per power of two (about 3%
+ * relative error).
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = EXACT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucketOf(long value) {
+        if (value < EXACT) return (int) Math.max(0, value);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return - the highest value that falls into the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < EXACT) return bucket;
+        int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+        long sub = (bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos - the latency in nanoseconds (negative values are recorded as 0).
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(Math.max(0, nanos));
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) ;
+    }
+
+    /**
+     * Records the time passed since a timestamp taken with System.nanoTime (ignored if the timestamp is 0, i.e. unset).
+     *
+     * @param startNanos - the start timestamp.
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != 0) record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        long m, otherMax = other.max.get();
+        while (otherMax > (m = max.get()) && !max.compareAndSet(m, otherMax)) ;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) total.get() / c;
+    }
+
+    /**
+     * @param percentile - the percentile to compute (0-100).
+     * @return - an upper bound of the value at the given percentile (0 if nothing was recorded).
+     */
+    public long percentile(double percentile) {
+        long c = count.get();
+        if (c == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * c));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * @return - a one line summary (in microseconds) for logs and reports.
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+                count(), mean() / 1000.0, percentile(50) / 1000.0, percentile(90) / 1000.0,
+                percentile(99) / 1000.0, max() / 1000.0);
+    }
+}
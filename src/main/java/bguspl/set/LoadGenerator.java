@@ -0,0 +1,466 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the key press pipeline (Player.keyPressed, the player threads, the claims and the dealer): presses are
+ * injected at increasing load levels, through the same call InputManager makes or through the network server, and
+ * the throughput and latencies the game achieves are reported for each level, up to the table's saturation point.
+ * <p>
+ * The presses are synthesised (Poisson arrivals of bursts; Burst is the mean number of presses in a burst, 1 for
+ * plain Poisson arrivals, on uniformly random slots) or come from the key presses recorded in an event journal
+ * (Trace). The injection is open loop: each press is sent at its scheduled time whether or not the game kept up, so a
+ * saturated game shows up as lost presses and growing queueing latencies, not as a lower offered rate (a press is
+ * lost if the player's queue is full, counted as dropped, or if the player ignores it while frozen or waiting for a
+ * verdict). A level plays as many games as fit in its duration (a game that ends is replaced by a new one).
+ * <p>
+ * Usage: java -cp target/classes bguspl.set.LoadGenerator [Key=Value ...]
+ * <p>
+ * Harness keys: Levels (comma separated; the total presses per second, or speed factors of a trace), Players, Burst,
+ * LevelSeconds, Path (Direct or Network), Trace (an event journal file), Seed and Output (CSV file). Every other key
+ * is a game configuration property (the defaults have no freezes, so the pipeline rather than the rules is measured).
+ */
+public class LoadGenerator {
+
+    private static final String[] HARNESS_KEYS = {"Levels", "Players", "Burst", "LevelSeconds", "Path", "Trace",
+            "Seed", "Output"};
+
+    /**
+     * A level is saturated if the game takes less than this part of the offered presses.
+     */
+    private static final double SATURATED_TAKEN = 0.95;
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static Properties defaultGameProperties() {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("ComputerPlayers", "0");
+        properties.put("Hints", "False");
+        properties.put("Jmx", "False");
+        properties.put("Journal", "False");
+        properties.put("TurnTimeoutSeconds", "60");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        return properties;
+    }
+
+    /**
+     * The key presses of one player, as offsets (in nanoseconds) from the start of the load.
+     */
+    interface Schedule {
+
+        /**
+         * @return - the time of the player's next press (from the start of the load).
+         */
+        long nextNanos();
+
+        /**
+         * @return - the slot of the press at nextNanos (and moves on to the next press).
+         */
+        int take();
+    }
+
+    /**
+     * Poisson arrivals of bursts (of a geometrically distributed number of presses, back to back).
+     */
+    static class SyntheticSchedule implements Schedule {
+
+        private final SplittableRandom random;
+        private final double burstsPerNano;
+        private final double burst;
+        private final int slots;
+        private long next;
+        private int leftInBurst;
+
+        /**
+         * @param random - the player's generator.
+         * @param rate   - the player's mean number of presses per second.
+         * @param burst  - the mean number of presses in a burst (at least 1).
+         * @param slots  - the number of slots on the table.
+         */
+        SyntheticSchedule(SplittableRandom random, double rate, double burst, int slots) {
+            this.random = random;
+            this.burst = Math.max(1, burst);
+            this.burstsPerNano = rate / this.burst / 1e9;
+            this.slots = slots;
+            startBurst();
+        }
+
+        private void startBurst() {
+            next += (long) (-Math.log(1 - random.nextDouble()) / burstsPerNano);
+            // geometric with mean burst: the burst goes on with probability 1 - 1 / burst after each press
+            leftInBurst = 1;
+            while (random.nextDouble() < 1 - 1 / burst)
+                leftInBurst++;
+        }
+
+        @Override
+        public long nextNanos() {
+            return next;
+        }
+
+        @Override
+        public int take() {
+            int slot = random.nextInt(slots);
+            if (--leftInBurst == 0) startBurst();
+            return slot;
+        }
+    }
+
+    /**
+     * A player's recorded presses, sped up by a factor and repeated as long as needed.
+     */
+    static class TraceSchedule implements Schedule {
+
+        private final long[] nanos;
+        private final int[] slots;
+        private final double speed;
+        private final long period;
+        private long round;
+        private int next;
+
+        /**
+         * @param nanos - the times of the recorded presses (from the start of the recording).
+         * @param slots - the slots of the recorded presses.
+         * @param speed - the speed factor.
+         */
+        TraceSchedule(long[] nanos, int[] slots, double speed) {
+            this.nanos = nanos;
+            this.slots = slots;
+            this.speed = speed;
+            period = nanos.length == 0 ? 0 : nanos[nanos.length - 1] + 1;
+        }
+
+        @Override
+        public long nextNanos() {
+            if (nanos.length == 0) return Long.MAX_VALUE;
+            return (long) ((round * period + nanos[next]) / speed);
+        }
+
+        @Override
+        public int take() {
+            int slot = slots[next];
+            if (++next == nanos.length) {
+                next = 0;
+                round++;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Where the presses are injected.
+     */
+    private interface Injector extends AutoCloseable {
+
+        void press(int player, int slot) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * The results of a load level.
+     */
+    static class Level {
+        final double level;
+        long offered;
+        long taken;
+        long dropped;
+        long claims;
+        long sets;
+        int games;
+        long nanos;
+        final LatencyHistogram inputQueue = new LatencyHistogram();
+        final LatencyHistogram keyToVerdict = new LatencyHistogram();
+
+        Level(double level) {
+            this.level = level;
+        }
+
+        boolean saturated() {
+            return offered > 0 && (double) taken / offered < SATURATED_TAKEN;
+        }
+
+        void add(HeadlessGame game) {
+            GameMetrics metrics = game.env.metrics;
+            games++;
+            taken += metrics.latency(GameMetrics.Stage.INPUT_QUEUE).count();
+            claims += metrics.claims.sum();
+            sets += metrics.sets.sum();
+            for (Player player : game.players)
+                dropped += player.getMoves().dropped();
+            inputQueue.add(metrics.latency(GameMetrics.Stage.INPUT_QUEUE));
+            keyToVerdict.add(metrics.latency(GameMetrics.Stage.KEY_TO_VERDICT));
+        }
+    }
+
+    private final Properties game;
+    private final int players;
+    private final double burst;
+    private final long levelNanos;
+    private final boolean network;
+    private final long[][] traceNanos;
+    private final int[][] traceSlots;
+    private final long seed;
+
+    LoadGenerator(Properties game, int players, double burst, long levelNanos, boolean network,
+                  long[][] traceNanos, int[][] traceSlots, long seed) {
+        this.game = game;
+        this.players = players;
+        this.burst = burst;
+        this.levelNanos = levelNanos;
+        this.network = network;
+        this.traceNanos = traceNanos;
+        this.traceSlots = traceSlots;
+        this.seed = seed;
+    }
+
+    private Schedule[] schedules(double level, int slots) {
+        Schedule[] schedules = new Schedule[players];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < players; i++)
+            schedules[i] = traceNanos != null ? new TraceSchedule(traceNanos[i], traceSlots[i], level)
+                    : new SyntheticSchedule(random.split(), level / players, burst, slots);
+        return schedules;
+    }
+
+    /**
+     * Runs a load level: injects the presses of the level for LevelSeconds, into as many games as it takes.
+     */
+    Level run(double level) throws IOException, InterruptedException {
+        Properties properties = new Properties();
+        properties.putAll(game);
+        properties.put("HumanPlayers", Integer.toString(players));
+        Config config = new Config(HeadlessGame.silentLogger(), properties);
+        Schedule[] schedules = schedules(level, config.maxTableSize);
+        Level result = new Level(level);
+
+        long start = System.nanoTime(), end = start + levelNanos;
+        while (System.nanoTime() - end < 0) {
+            NetworkUserInterface ui = network ? new NetworkUserInterface(config, null) : null;
+            HeadlessGame headless = new HeadlessGame(HeadlessGame.silentLogger(), config,
+                    ui != null ? ui : new UserInterfaceHeadless(), null);
+            Thread runner = new Thread(() -> {
+                try {
+                    headless.play();
+                } catch (InterruptedException ignored) {}
+            }, "load-game");
+            runner.start();
+            try (Injector injector = network ? networkInjector(headless, ui, config) : directInjector(headless)) {
+                while (runner.isAlive()) {
+                    int player = 0;
+                    long next = schedules[0].nextNanos();
+                    for (int i = 1; i < schedules.length; i++)
+                        if (schedules[i].nextNanos() < next) next = schedules[player = i].nextNanos();
+                    long at = start + next;
+                    if (at - end >= 0) break;
+                    long wait = at - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(Math.min(wait, MAX_PARK_NANOS));
+                        continue;
+                    }
+                    injector.press(player, schedules[player].take());
+                    result.offered++;
+                }
+            } finally {
+                headless.dealer.terminate();
+                runner.join();
+            }
+            result.add(headless);
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static Injector directInjector(HeadlessGame game) {
+        return new Injector() {
+            @Override
+            public void press(int player, int slot) {
+                game.players[player].keyPressed(slot); // what InputManager does for a key event
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Connects a client per player to a network server in front of the game. The clients read (and ignore) the
+     * frames the server sends them, so it does not disconnect them as slow.
+     */
+    private Injector networkInjector(HeadlessGame game, NetworkUserInterface ui, Config config) throws IOException {
+        NetworkServer server = new NetworkServer(HeadlessGame.silentLogger(), config, game.players, ui, null, 0);
+        server.start();
+        SocketChannel[] clients = new SocketChannel[players];
+        ByteBuffer message = ByteBuffer.allocate(NetworkServer.MESSAGE_SIZE);
+        ByteBuffer sink = ByteBuffer.allocateDirect(64 * 1024);
+        for (int i = 0; i < players; i++) {
+            clients[i] = SocketChannel.open(new InetSocketAddress("localhost", server.port()));
+            clients[i].configureBlocking(false);
+        }
+        Injector injector = new Injector() {
+            @Override
+            public void press(int player, int slot) throws IOException {
+                send(clients[player], NetworkServer.PRESS, slot);
+                sink.clear();
+                while (clients[player].read(sink) > 0)
+                    sink.clear();
+            }
+
+            private void send(SocketChannel client, byte type, int value) throws IOException {
+                message.clear();
+                message.put(type).putInt(value).flip();
+                while (message.hasRemaining())
+                    client.write(message);
+            }
+
+            @Override
+            public void close() throws IOException {
+                for (SocketChannel client : clients)
+                    client.close();
+                try {
+                    server.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // the caller sees it when it next waits
+                }
+            }
+        };
+        for (int i = 0; i < players; i++) {
+            message.clear();
+            message.put(NetworkServer.JOIN).putInt(i).flip();
+            while (message.hasRemaining())
+                clients[i].write(message);
+        }
+        return injector;
+    }
+
+    /**
+     * Reads the key presses of an event journal, per player.
+     *
+     * @return - the press times (from the first press) and the slots, per player.
+     */
+    private static Object[] loadTrace(Path file) throws IOException {
+        EventJournal.Reader reader = new EventJournal.Reader(file);
+        List<long[]> presses = new ArrayList<>();
+        int players = 0;
+        while (reader.next())
+            if (reader.type == EventJournal.Type.KEY_PRESS) {
+                presses.add(new long[]{reader.nanos, reader.player, reader.slot});
+                players = Math.max(players, reader.player + 1);
+            }
+        if (presses.isEmpty()) throw new IOException(file + " has no key presses");
+        long first = presses.get(0)[0];
+        long[][] nanos = new long[players][];
+        int[][] slots = new int[players][];
+        int[] counts = new int[players];
+        for (long[] press : presses)
+            counts[(int) press[1]]++;
+        for (int i = 0; i < players; i++) {
+            nanos[i] = new long[counts[i]];
+            slots[i] = new int[counts[i]];
+        }
+        Arrays.fill(counts, 0);
+        for (long[] press : presses) {
+            int player = (int) press[1];
+            nanos[player][counts[player]] = press[0] - first;
+            slots[player][counts[player]++] = (int) press[2];
+        }
+        return new Object[]{nanos, slots};
+    }
+
+    private static boolean isHarnessKey(String key) {
+        for (String harnessKey : HARNESS_KEYS)
+            if (harnessKey.equals(key)) return true;
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties harness = new Properties();
+        Properties game = defaultGameProperties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("expected Key=Value, got: " + arg);
+            String key = arg.substring(0, eq).trim();
+            String value = arg.substring(eq + 1).trim();
+            (isHarnessKey(key) ? harness : game).put(key, value);
+        }
+
+        long[][] traceNanos = null;
+        int[][] traceSlots = null;
+        int players = Integer.parseInt(harness.getProperty("Players", "4"));
+        String trace = harness.getProperty("Trace");
+        if (trace != null) {
+            Object[] loaded = loadTrace(Paths.get(trace));
+            traceNanos = (long[][]) loaded[0];
+            traceSlots = (int[][]) loaded[1];
+            players = traceNanos.length;
+        }
+        String[] levels = harness.getProperty("Levels", trace != null ? "1,2,4,8,16" : "100,1000,10000,100000").split(",");
+        double burst = Double.parseDouble(harness.getProperty("Burst", "1"));
+        long levelNanos = (long) (Double.parseDouble(harness.getProperty("LevelSeconds", "5")) * 1e9);
+        boolean network = "Network".equalsIgnoreCase(harness.getProperty("Path", "Direct"));
+        long seed = Long.parseLong(harness.getProperty("Seed", "1"));
+        Path output = Paths.get(harness.getProperty("Output", "target/load.csv"));
+
+        LoadGenerator generator = new LoadGenerator(game, players, burst, levelNanos, network, traceNanos, traceSlots, seed);
+        System.out.println(String.format(Locale.ROOT, "%d players, %s path, %s", players, network ? "network" : "direct",
+                trace != null ? "trace " + trace + " (levels are speed factors)" : "burst " + burst + " (levels are presses/s)"));
+        System.out.println(String.format(Locale.ROOT, "%10s %12s %12s %8s %8s %6s %12s %12s %14s",
+                "level", "offered/s", "taken/s", "taken%", "dropped", "games", "queue p50us", "queue p99us", "verdict p99us"));
+        List<Level> results = new ArrayList<>();
+        Level saturation = null;
+        for (String level : levels) {
+            Level result = generator.run(Double.parseDouble(level.trim()));
+            results.add(result);
+            double seconds = result.nanos / 1e9;
+            System.out.println(String.format(Locale.ROOT, "%10s %12.0f %12.0f %8.1f %8d %6d %12.1f %12.1f %14.1f",
+                    level.trim(), result.offered / seconds, result.taken / seconds,
+                    result.offered == 0 ? 100.0 : 100.0 * result.taken / result.offered, result.dropped, result.games,
+                    result.inputQueue.percentile(50) / 1000.0, result.inputQueue.percentile(99) / 1000.0,
+                    result.keyToVerdict.percentile(99) / 1000.0));
+            if (saturation == null && result.saturated()) saturation = result;
+        }
+        System.out.println(saturation == null ? "not saturated at the levels tried"
+                : String.format(Locale.ROOT, "saturated at level %s (%.0f presses/s taken of %.0f offered)",
+                trim(saturation.level), saturation.taken / (saturation.nanos / 1e9), saturation.offered / (saturation.nanos / 1e9)));
+
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output))) {
+            out.println("level,seconds,offered,taken,dropped,games,claims,sets,queue_p50_us,queue_p99_us,queue_max_us,key_to_verdict_p50_us,key_to_verdict_p99_us");
+            for (Level result : results)
+                out.println(String.format(Locale.ROOT, "%s,%.3f,%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f",
+                        trim(result.level), result.nanos / 1e9, result.offered, result.taken, result.dropped,
+                        result.games, result.claims, result.sets, result.inputQueue.percentile(50) / 1000.0,
+                        result.inputQueue.percentile(99) / 1000.0, result.inputQueue.max() / 1000.0,
+                        result.keyToVerdict.percentile(50) / 1000.0, result.keyToVerdict.percentile(99) / 1000.0));
+        }
+        System.out.println("results written to " + output);
+    }
+
+    private static String trim(double level) {
+        return level == Math.rint(level) ? Long.toString((long) level) : Double.toString(level);
+    }
+}
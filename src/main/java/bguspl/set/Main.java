@@ -6,6 +6,7 @@ import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -23,6 +24,12 @@ public class Main {
     private static boolean xButtonPressed = false;
     private static Logger logger;
 
+    /**
+     * The name (without extension) of this run's files in the logs directory.
+     */
+    //just to make our log file nicer :)
+    private static final String runName = new SimpleDateFormat("M-d_HH-mm-ss").format(Calendar.getInstance().getTime());
+
     public static void xButtonPressed() {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
@@ -44,7 +51,8 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        GameMetrics metrics = new GameMetrics(config.players);
+        Util util = new UtilImpl(config, metrics);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -56,9 +64,19 @@ public class Main {
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        NetworkUserInterface networkUi = null;
+        SpectatorFeed feed = null;
+        if (config.networkPort > 0) ui = networkUi = new NetworkUserInterface(config, feed = new SpectatorFeed(config, ui));
+        ui = new UserInterfaceDecorator(logger, util, ui, metrics);
+
+        EventJournal journal = EventJournal.DISABLED;
+        if (config.journal) try {
+            journal = EventJournal.open(Paths.get("./logs/" + runName + ".journal"), config.journalSizeMB * 1024L * 1024L);
+        } catch (IOException e) {
+            logger.severe("cannot open the event journal: " + e);
+        }
 
-        Env env = new Env(logger, config, ui, util);
+        Env env = new Env(logger, config, ui, util, metrics, journal);
 
         // create the game entities
         Table table = new Table(env);
@@ -66,6 +84,15 @@ public class Main {
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
+        NetworkServer server = null;
+        if (networkUi != null) try {
+            server = new NetworkServer(logger, config, players, networkUi, feed, config.networkPort);
+            server.start();
+            logger.info("remote players can connect to port " + server.port());
+        } catch (IOException e) {
+            logger.severe("cannot start the network server: " + e);
+        }
+
         // start the dealer thread
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
         dealerThread.startWithLog();
@@ -77,6 +104,10 @@ public class Main {
             env.ui.dispose();
         } catch (InterruptedException ignored) {
         } finally {
+            if (server != null) try {
+                server.close();
+            } catch (InterruptedException ignored) {}
+            env.journal.close();
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
@@ -84,15 +115,18 @@ public class Main {
         }
     }
 
+    /**
+     * The number of log records that can wait for the log writer thread.
+     */
+    private static final int LOG_BUFFER_RECORDS = 8192;
+
     private static Logger initLogger() {
 
-        //just to make our log file nicer :)
-        SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
+        Handler handler;
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            handler = new AsyncLogHandler(Paths.get("./logs/" + runName + ".log"), LOG_BUFFER_RECORDS);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -109,8 +143,9 @@ public class Main {
         Handler[] handlers = logger.getHandlers();
         if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
             // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
+            // not synchronized: records are formatted by the log writer thread only
             @Override
-            public synchronized String format(LogRecord lr) {
+            public String format(LogRecord lr) {
                 return String.format(format, new Date(lr.getMillis()),
                         lr.getLevel().getLocalizedName(), lr.getMessage()
                 );
@@ -118,4 +153,15 @@ public class Main {
         }));
         logger.setLevel(level);
     }
+
+    /**
+     * @param logger         - the logger whose asynchronous handlers to configure.
+     * @param dropOnOverflow - true to drop records when the log buffer is full, false to wait for room.
+     */
+    public static void setLogOverflowPolicy(Logger logger, boolean dropOnOverflow) {
+        Handler[] handlers = logger.getHandlers();
+        if (handlers != null) for (Handler h : handlers)
+            if (h instanceof AsyncLogHandler)
+                ((AsyncLogHandler) h).setDropOnOverflow(dropOnOverflow);
+    }
 }
@@ -0,0 +1,394 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A TCP server for remote players: a single thread serves all the connections with a selector (non-blocking channels,
+ * direct buffers, no thread per connection).
+ * <p>
+ * A client sends MESSAGE_SIZE byte messages (big-endian): byte type, int value. JOIN (value: the human player to play
+ * as, or -1 to only watch) is answered with a WELCOME frame and the current state; after that every PRESS (value: the
+ * slot) is passed to the player like a key press from InputManager. A player is played by one connection at a time.
+ * The server sends the game's user interface calls as NetworkUserInterface frames. A client that does not read its
+ * frames fast enough is disconnected once its outbound buffer is full.
+ * <p>
+ * A client that sends SPECTATE instead gets the SpectatorFeed frames: a snapshot, then a delta every tick (and a
+ * snapshot every snapshot period). Each frame is encoded once and the same bytes are written to every spectator. A
+ * spectator that falls behind skips the frames it did not start reading and gets the next snapshot instead.
+ */
+public class NetworkServer implements Runnable {
+
+    public static final int MESSAGE_SIZE = 5;
+    public static final byte JOIN = 1;
+    public static final byte PRESS = 2;
+    public static final byte SPECTATE = 3;
+
+    /**
+     * The size of each connection's outbound buffer.
+     */
+    static final int OUTBOUND_BYTES = 8 * 1024;
+
+    private static final int INBOUND_BYTES = 64 * MESSAGE_SIZE;
+    private static final int NOT_JOINED = -2;
+
+    /**
+     * The number of spectator frames that can wait for a spectator before it is resynchronized with a snapshot.
+     */
+    static final int MAX_QUEUED_FRAMES = 32;
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+    private final NetworkUserInterface ui;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Connection> joining = new ArrayList<>();
+    private final Connection[] playedBy;
+    private final SpectatorFeed feed;
+    private final List<Connection> spectators = new ArrayList<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_QUEUED_FRAMES + 1];
+    private final long tickNanos;
+    private final long snapshotNanos;
+    private long nextTick;
+    private long nextSnapshot;
+    private ByteBuffer frames = ByteBuffer.allocateDirect(1024 * NetworkUserInterface.FRAME_SIZE);
+    private volatile boolean terminate;
+    private volatile int open;
+    private Thread thread;
+
+    /**
+     * A client connection (selector thread only).
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocateDirect(INBOUND_BYTES);
+        final ByteBuffer out = ByteBuffer.allocateDirect(OUTBOUND_BYTES);
+        int player = NOT_JOINED;
+        boolean welcomed;
+        ArrayDeque<ByteBuffer> frames; // spectators only: shared frames, the first one maybe partially written
+        boolean needsSnapshot;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param logger  - the game logger.
+     * @param config  - the game configuration.
+     * @param players - the players (remote clients play the human ones).
+     * @param ui      - the user interface whose calls are sent to the clients.
+     * @param feed    - the feed sent to spectators (null for none).
+     * @param port    - the TCP port to listen on (0 for any free port).
+     * @throws IOException - if the port cannot be bound.
+     */
+    public NetworkServer(Logger logger, Config config, Player[] players, NetworkUserInterface ui, SpectatorFeed feed,
+                         int port) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        this.ui = ui;
+        this.feed = feed;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.spectatorTickMillis));
+        snapshotNanos = TimeUnit.MILLISECONDS.toNanos(config.spectatorSnapshotMillis);
+        nextTick = nextSnapshot = System.nanoTime();
+        playedBy = new Connection[config.humanPlayers];
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(port), 1024);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        ui.setListener(selector::wakeup);
+    }
+
+    /**
+     * @return - the port the server listens on.
+     */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Starts the server thread.
+     */
+    public void start() {
+        thread = new ThreadLogger(this, "network", logger);
+        ((ThreadLogger) thread).startWithLog();
+    }
+
+    /**
+     * Stops the server thread and closes all the connections.
+     */
+    public void close() throws InterruptedException {
+        terminate = true;
+        selector.wakeup();
+        if (thread != null) thread.join();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!terminate) {
+                if (feed == null) selector.select();
+                else selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime())));
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) read(connection);
+                        if (key.isValid() && key.isWritable()) write(connection);
+                    }
+                }
+                broadcast();
+                if (feed != null && System.nanoTime() - nextTick >= 0) publish();
+            }
+        } catch (IOException e) {
+            logger.severe("network server failed: " + e);
+        } finally {
+            for (Connection connection : new ArrayList<>(connections))
+                disconnect(connection, null);
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection connection = new Connection(channel, key);
+            key.attach(connection);
+            connections.add(connection);
+            open = connections.size();
+        }
+    }
+
+    private void read(Connection connection) {
+        int read;
+        try {
+            read = connection.channel.read(connection.in);
+        } catch (IOException e) {
+            disconnect(connection, e.getMessage());
+            return;
+        }
+        if (read < 0) {
+            disconnect(connection, null);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= MESSAGE_SIZE) {
+            byte type = in.get();
+            int value = in.getInt();
+            if (type == JOIN && connection.player == NOT_JOINED) join(connection, value);
+            else if (type == SPECTATE && connection.player == NOT_JOINED && feed != null) spectate(connection);
+            else if (type == PRESS && connection.player >= 0 && value >= 0 && value < config.maxTableSize)
+                players[connection.player].keyPressed(value);
+            else {
+                disconnect(connection, "unexpected message " + type + " " + value);
+                return;
+            }
+        }
+        in.compact();
+    }
+
+    private void join(Connection connection, int player) {
+        if (player >= 0 && player < playedBy.length && playedBy[player] == null) {
+            playedBy[player] = connection;
+            connection.player = player;
+        } else connection.player = -1;
+        joining.add(connection);
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("connection " + connection.channel + " joined as player " + (connection.player + 1));
+    }
+
+    private void spectate(Connection connection) {
+        connection.player = -1;
+        connection.frames = new ArrayDeque<>();
+        connection.needsSnapshot = true;
+        spectators.add(connection);
+    }
+
+    /**
+     * Encodes the spectator feed's next frames (one delta for the spectators that are up to date, one snapshot for the
+     * new ones and the ones that fell behind, or a snapshot for all every snapshot period) and sends them.
+     */
+    private void publish() {
+        long now = System.nanoTime();
+        nextTick = now + tickNanos;
+        boolean periodic = snapshotNanos > 0 && now - nextSnapshot >= 0;
+        if (periodic) nextSnapshot = now + snapshotNanos;
+        boolean resync = periodic;
+        for (Connection spectator : spectators)
+            resync |= spectator.needsSnapshot;
+        ByteBuffer delta, snapshot;
+        synchronized (feed) {
+            delta = periodic ? null : feed.encode(false);
+            snapshot = resync ? feed.encode(true) : null;
+        }
+        for (int i = spectators.size() - 1; i >= 0; i--) { // backwards: writing may disconnect
+            Connection spectator = spectators.get(i);
+            ByteBuffer frame = periodic || spectator.needsSnapshot ? snapshot : delta;
+            if (frame == null) continue;
+            if (!enqueue(spectator.frames, frame.duplicate(), frame == snapshot)) { // shares the encoded bytes
+                spectator.needsSnapshot = true; // behind: skip to a snapshot
+                continue;
+            }
+            if (frame == snapshot) spectator.needsSnapshot = false;
+            write(spectator);
+        }
+    }
+
+    /**
+     * Queues a frame for a spectator. Once MAX_QUEUED_FRAMES wait, the frames the spectator did not start reading are
+     * dropped: a snapshot takes their place, a delta is not queued (the spectator needs a snapshot then).
+     *
+     * @param frames   - the spectator's queued frames (the first one maybe partially written).
+     * @param frame    - the frame to queue.
+     * @param snapshot - true iff the frame is a snapshot.
+     * @return - true iff the frame was queued.
+     */
+    static boolean enqueue(ArrayDeque<ByteBuffer> frames, ByteBuffer frame, boolean snapshot) {
+        if (frames.size() >= MAX_QUEUED_FRAMES) {
+            ByteBuffer started = frames.peekFirst();
+            boolean partial = started.position() > 0;
+            frames.clear();
+            if (partial) frames.add(started);
+            if (!snapshot) return false;
+        }
+        frames.add(frame);
+        return true;
+    }
+
+    /**
+     * Sends the frames staged by the user interface to the joined connections, and welcomes the joining ones with
+     * the current state (under the user interface's lock, so no frame falls in between).
+     */
+    private void broadcast() {
+        synchronized (ui) {
+            frames = ui.drain(frames);
+            if (frames.hasRemaining())
+                for (int i = connections.size() - 1; i >= 0; i--) { // backwards: send may disconnect
+                    Connection connection = connections.get(i);
+                    if (connection.welcomed) send(connection, frames);
+                }
+            for (int i = joining.size() - 1; i >= 0; i--) { // backwards: welcoming may disconnect
+                Connection connection = joining.get(i);
+                ByteBuffer out = connection.out;
+                if (out.remaining() < NetworkUserInterface.FRAME_SIZE + ui.snapshotSize()) {
+                    disconnect(connection, "state does not fit in the outbound buffer");
+                    continue;
+                }
+                NetworkUserInterface.put(out, NetworkUserInterface.WELCOME, connection.player, config.maxTableSize);
+                ui.snapshot(out);
+                connection.welcomed = true;
+                write(connection);
+            }
+            joining.clear();
+        }
+    }
+
+    private void send(Connection connection, ByteBuffer frames) {
+        if (connection.out.remaining() < frames.remaining()) {
+            disconnect(connection, "too slow (outbound buffer full)");
+            return;
+        }
+        int position = frames.position();
+        connection.out.put(frames);
+        frames.position(position);
+        write(connection);
+    }
+
+    /**
+     * Writes as much of a connection's outbound buffer as the socket takes, and asks to be told when it can take more.
+     */
+    private void write(Connection connection) {
+        if (connection.frames != null) {
+            writeFrames(connection);
+            return;
+        }
+        ByteBuffer out = connection.out;
+        if (out.position() == 0 || !connection.key.isValid()) return;
+        out.flip();
+        try {
+            connection.channel.write(out);
+        } catch (IOException e) {
+            out.compact();
+            disconnect(connection, e.getMessage());
+            return;
+        }
+        out.compact();
+        int ops = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (connection.key.interestOps() != ops) connection.key.interestOps(ops);
+    }
+
+    /**
+     * Writes as many of a spectator's queued frames as the socket takes (with a single gathering write).
+     */
+    private void writeFrames(Connection connection) {
+        ArrayDeque<ByteBuffer> frames = connection.frames;
+        if (frames.isEmpty() || !connection.key.isValid()) return;
+        int count = 0;
+        for (ByteBuffer frame : frames)
+            gather[count++] = frame;
+        try {
+            connection.channel.write(gather, 0, count);
+        } catch (IOException e) {
+            disconnect(connection, e.getMessage());
+            return;
+        } finally {
+            Arrays.fill(gather, 0, count, null);
+        }
+        while (!frames.isEmpty() && !frames.peekFirst().hasRemaining())
+            frames.removeFirst();
+        int ops = frames.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (connection.key.interestOps() != ops) connection.key.interestOps(ops);
+    }
+
+    private void disconnect(Connection connection, String reason) {
+        if (reason != null) logger.warning("disconnecting " + connection.channel + ": " + reason);
+        connections.remove(connection);
+        joining.remove(connection);
+        spectators.remove(connection);
+        open = connections.size();
+        if (connection.player >= 0 && playedBy[connection.player] == connection) playedBy[connection.player] = null;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * @return - the number of open connections (for tests).
+     */
+    int connections() {
+        return open;
+    }
+}
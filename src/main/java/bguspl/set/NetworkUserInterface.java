@@ -0,0 +1,267 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A user interface that sends every call to the remote clients of a NetworkServer (and passes it on to another user
+ * interface, if any). The game threads encode each call as a fixed size frame into a staging buffer; the server's
+ * selector thread takes the staged frames and copies them into the connections' outbound buffers.
+ * <p>
+ * Frames (big-endian, FRAME_SIZE bytes): byte type, int a, long b, where the types and the meaning of a and b are:
+ * <pre>
+ *   PLACE_CARD    slot, card        REMOVE_CARD  slot, -
+ *   PLACE_TOKEN   slot, player      REMOVE_TOKEN slot, player
+ *   REMOVE_TOKENS slot (-1: all), - COUNTDOWN    warn (1/0), millis
+ *   ELAPSED       -, millis         FREEZE       player, millis
+ *   SCORE         player, score     WINNER       player, number of winners (one frame per winner)
+ *   DISPOSE       -, -              WELCOME      the player the connection plays as (-1: none), max table size
+ * </pre>
+ * The interface also keeps the cards, tokens and scores it was told about, so a client that connects in the middle
+ * of a game first gets the current state.
+ */
+public class NetworkUserInterface implements UserInterface {
+
+    public static final int FRAME_SIZE = 13;
+
+    public static final byte PLACE_CARD = 1;
+    public static final byte REMOVE_CARD = 2;
+    public static final byte PLACE_TOKEN = 3;
+    public static final byte REMOVE_TOKEN = 4;
+    public static final byte REMOVE_TOKENS = 5;
+    public static final byte COUNTDOWN = 6;
+    public static final byte ELAPSED = 7;
+    public static final byte FREEZE = 8;
+    public static final byte SCORE = 9;
+    public static final byte WINNER = 10;
+    public static final byte DISPOSE = 11;
+    public static final byte WELCOME = 12;
+
+    private final UserInterface next;
+
+    /**
+     * The frames not taken by the server yet (guarded by this).
+     */
+    private ByteBuffer staged = ByteBuffer.allocate(1024 * FRAME_SIZE);
+
+    /**
+     * The state of the table and the scores, as sent so far (guarded by this).
+     */
+    private final int[] cards;
+    private final boolean[][] tokens;
+    private final int[] scores;
+
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private volatile Runnable listener = () -> {};
+
+    /**
+     * @param config - the game configuration.
+     * @param next   - the user interface to pass every call on to (null for none).
+     */
+    public NetworkUserInterface(Config config, UserInterface next) {
+        this.next = next;
+        cards = new int[config.maxTableSize];
+        Arrays.fill(cards, -1);
+        tokens = new boolean[config.maxTableSize][config.players];
+        scores = new int[config.players];
+    }
+
+    /**
+     * @param listener - called (once until the next drain) when frames are staged.
+     */
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    private void stage(byte type, int a, long b) {
+        synchronized (this) {
+            if (staged.remaining() < FRAME_SIZE) { // the server fell behind: make room rather than lose a frame
+                ByteBuffer bigger = ByteBuffer.allocate(staged.capacity() * 2);
+                staged.flip();
+                staged = bigger.put(staged);
+            }
+            put(staged, type, a, b);
+        }
+        if (signalled.compareAndSet(false, true)) listener.run();
+    }
+
+    static void put(ByteBuffer buffer, byte type, int a, long b) {
+        buffer.put(type).putInt(a).putLong(b);
+    }
+
+    /**
+     * Moves the staged frames into a buffer. Called by the server with this interface locked.
+     *
+     * @param into - the buffer (cleared, and flipped for reading when done); grown if needed.
+     * @return - the buffer the frames are in.
+     */
+    synchronized ByteBuffer drain(ByteBuffer into) {
+        signalled.set(false);
+        staged.flip();
+        into.clear();
+        if (into.capacity() < staged.remaining()) into = ByteBuffer.allocateDirect(staged.capacity());
+        into.put(staged).flip();
+        staged.clear();
+        return into;
+    }
+
+    /**
+     * @return - the number of bytes the current state takes as frames (see snapshot).
+     */
+    synchronized int snapshotSize() {
+        int frames = scores.length;
+        for (int slot = 0; slot < cards.length; slot++) {
+            if (cards[slot] >= 0) frames++;
+            for (boolean token : tokens[slot])
+                if (token) frames++;
+        }
+        return frames * FRAME_SIZE;
+    }
+
+    /**
+     * Writes the current cards, tokens and scores as frames. Called by the server with this interface locked, right
+     * after draining, so the snapshot and the frames that follow it fit together.
+     */
+    synchronized void snapshot(ByteBuffer into) {
+        for (int slot = 0; slot < cards.length; slot++) {
+            if (cards[slot] >= 0) put(into, PLACE_CARD, slot, cards[slot]);
+            for (int player = 0; player < scores.length; player++)
+                if (tokens[slot][player]) put(into, PLACE_TOKEN, slot, player);
+        }
+        for (int player = 0; player < scores.length; player++)
+            put(into, SCORE, player, scores[player]);
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        synchronized (this) {
+            cards[slot] = card;
+            stage(PLACE_CARD, slot, card);
+        }
+        if (next != null) next.placeCard(card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        synchronized (this) {
+            cards[slot] = -1;
+            stage(REMOVE_CARD, slot, 0);
+        }
+        if (next != null) next.removeCard(slot);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots, int count) {
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                this.cards[slots[i]] = cards[i];
+                stage(PLACE_CARD, slots[i], cards[i]);
+            }
+        }
+        if (next != null) next.placeCards(cards, slots, count);
+    }
+
+    @Override
+    public void moveCards(int[] cards, int[] from, int[] to, int count) {
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                this.cards[from[i]] = -1;
+                stage(REMOVE_CARD, from[i], 0);
+                this.cards[to[i]] = cards[i];
+                stage(PLACE_CARD, to[i], cards[i]);
+            }
+        }
+        if (next != null) next.moveCards(cards, from, to, count);
+    }
+
+    @Override
+    public void removeCards(int[] slots, int count) {
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                cards[slots[i]] = -1;
+                stage(REMOVE_CARD, slots[i], 0);
+            }
+        }
+        if (next != null) next.removeCards(slots, count);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        synchronized (this) {
+            tokens[slot][player] = true;
+            stage(PLACE_TOKEN, slot, player);
+        }
+        if (next != null) next.placeToken(player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        synchronized (this) {
+            for (boolean[] slotTokens : tokens)
+                Arrays.fill(slotTokens, false);
+            stage(REMOVE_TOKENS, -1, 0);
+        }
+        if (next != null) next.removeTokens();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        synchronized (this) {
+            Arrays.fill(tokens[slot], false);
+            stage(REMOVE_TOKENS, slot, 0);
+        }
+        if (next != null) next.removeTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        synchronized (this) {
+            tokens[slot][player] = false;
+            stage(REMOVE_TOKEN, slot, player);
+        }
+        if (next != null) next.removeToken(player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        stage(COUNTDOWN, warn ? 1 : 0, millies);
+        if (next != null) next.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        stage(ELAPSED, 0, millies);
+        if (next != null) next.setElapsed(millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        stage(FREEZE, player, millies);
+        if (next != null) next.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        synchronized (this) {
+            scores[player] = score;
+            stage(SCORE, player, score);
+        }
+        if (next != null) next.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        synchronized (this) {
+            for (int player : players)
+                stage(WINNER, player, players.length);
+        }
+        if (next != null) next.announceWinner(players);
+    }
+
+    @Override
+    public void dispose() {
+        stage(DISPOSE, 0, 0);
+        if (next != null) next.dispose();
+    }
+}
@@ -0,0 +1,301 @@
+package bguspl.set;
+
+import bguspl.set.ex.CardSource;
+import bguspl.set.ex.MoveQueue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Replays a game recorded in an event journal: the dealer draws the recorded cards, the recorded key presses are fed
+ * to the players, and the user interface calls (cards, tokens, scores, freezes and winners) are checked against the
+ * recording.
+ * <p>
+ * Each press is delivered only once the replay has caught up with the recording at the time of the press (the same
+ * cards placed, scores set and freezes started, and every earlier press taken), so the replay does the same work in
+ * the same order whether it runs at the original speed or as fast as possible. Freezes and the turn timer still run
+ * on the wall clock, so a game that depends on them racing a press can diverge; the first differences are reported.
+ * <p>
+ * Usage: java -cp target/classes bguspl.set.Replay journal-file [Speed=Max|Original] [Config=config.properties]
+ * [Key=Value ...] (other keys override the game configuration, which should match the recorded game's).
+ */
+public class Replay {
+
+    /**
+     * The recorded events of a game.
+     */
+    public static class Recording {
+
+        public final int players;
+        private final EventJournal.Type[] types;
+        private final long[] nanos;
+        private final int[] player;
+        private final int[] slot;
+        private final int[] value;
+
+        private Recording(int players, EventJournal.Type[] types, long[] nanos, int[] player, int[] slot, int[] value) {
+            this.players = players;
+            this.types = types;
+            this.nanos = nanos;
+            this.player = player;
+            this.slot = slot;
+            this.value = value;
+        }
+
+        /**
+         * Reads a journal file.
+         *
+         * @param file - the journal file.
+         * @return - the recording.
+         * @throws IOException - if the file cannot be read or is not a journal.
+         */
+        public static Recording load(Path file) throws IOException {
+            EventJournal.Reader reader = new EventJournal.Reader(file);
+            int size = 0;
+            EventJournal.Type[] types = new EventJournal.Type[1024];
+            long[] nanos = new long[types.length];
+            int[] player = new int[types.length], slot = new int[types.length], value = new int[types.length];
+            int players = 0;
+            while (reader.next()) {
+                if (size == types.length) {
+                    types = Arrays.copyOf(types, size * 2);
+                    nanos = Arrays.copyOf(nanos, size * 2);
+                    player = Arrays.copyOf(player, size * 2);
+                    slot = Arrays.copyOf(slot, size * 2);
+                    value = Arrays.copyOf(value, size * 2);
+                }
+                types[size] = reader.type;
+                nanos[size] = reader.nanos;
+                player[size] = reader.player;
+                slot[size] = reader.slot;
+                value[size] = reader.value;
+                if (reader.type == EventJournal.Type.GAME_START) players = reader.value;
+                players = Math.max(players, reader.player + 1);
+                size++;
+            }
+            return new Recording(players, Arrays.copyOf(types, size), Arrays.copyOf(nanos, size),
+                    Arrays.copyOf(player, size), Arrays.copyOf(slot, size), Arrays.copyOf(value, size));
+        }
+
+        public int size() {
+            return types.length;
+        }
+
+        /**
+         * @return - the cards placed on the table, in order.
+         */
+        private int[] placedCards() {
+            int count = 0;
+            for (EventJournal.Type t : types)
+                if (t == EventJournal.Type.CARD_PLACED) count++;
+            int[] cards = new int[count];
+            for (int i = 0, j = 0; i < types.length; i++)
+                if (types[i] == EventJournal.Type.CARD_PLACED) cards[j++] = value[i];
+            return cards;
+        }
+    }
+
+    /**
+     * The outcome of a replay.
+     */
+    public static class Report {
+        public final int presses;
+        public final long durationNanos;
+        public final int mismatchCount;
+        public final List<String> mismatches;
+
+        Report(int presses, long durationNanos, int mismatchCount, List<String> mismatches) {
+            this.presses = presses;
+            this.durationNanos = durationNanos;
+            this.mismatchCount = mismatchCount;
+            this.mismatches = mismatches;
+        }
+
+        /**
+         * @return - true iff the replay made the same user interface calls as the recorded game.
+         */
+        public boolean matches() {
+            return mismatchCount == 0;
+        }
+    }
+
+    /**
+     * Draws the recorded cards, in order (or a random card once the replay diverged).
+     */
+    private static class RecordedCards implements CardSource {
+
+        private final int[] cards;
+        private int next; // dealer thread only
+
+        RecordedCards(int[] cards) {
+            this.cards = cards;
+        }
+
+        @Override
+        public int draw(List<Integer> deck, int slot) {
+            int index = next < cards.length ? deck.indexOf(cards[next]) : -1;
+            next++;
+            return index >= 0 ? index : ThreadLocalRandom.current().nextInt(deck.size());
+        }
+    }
+
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Replays a recorded game.
+     *
+     * @param recording      - the recorded game.
+     * @param properties     - the game configuration (the players are replaced by as many players as were recorded).
+     * @param originalSpeed  - true to deliver the presses at their recorded times, false to deliver them as fast as
+     *                       the game can take them.
+     * @return - the outcome of the replay.
+     * @throws InterruptedException - if the calling thread was interrupted (the replayed game is terminated).
+     */
+    public static Report replay(Recording recording, Properties properties, boolean originalSpeed) throws InterruptedException {
+        Properties gameProperties = HeadlessGame.withDefault(properties, "LogLevel", "OFF");
+        gameProperties.put("HumanPlayers", Integer.toString(recording.players));
+        gameProperties.put("ComputerPlayers", "0");
+        gameProperties.put("Journal", "False");
+        gameProperties.put("Jmx", "False");
+        Logger logger = HeadlessGame.silentLogger();
+        Config config = new Config(logger, gameProperties);
+
+        CheckingUserInterface ui = new CheckingUserInterface(recording.players, recording.types, recording.player,
+                recording.slot, recording.value);
+        HeadlessGame game = new HeadlessGame(logger, config, ui, new RecordedCards(recording.placedCards()));
+        long stallNanos = TimeUnit.MILLISECONDS.toNanos(config.turnTimeoutMillis + config.penaltyFreezeMillis + 5000);
+
+        Thread runner = new Thread(() -> {
+            try {
+                game.play();
+            } catch (InterruptedException ignored) {}
+        }, "replay-game");
+        long start = System.nanoTime();
+        runner.start();
+
+        int presses = 0, placedBefore = 0, scoredBefore = 0;
+        int[] freezesBefore = new int[recording.players];
+        int[] finalScores = new int[recording.players];
+        long recordingStart = recording.size() > 0 ? recording.nanos[0] : 0;
+        try {
+            for (int i = 0; i < recording.size(); i++) {
+                int p = recording.player[i];
+                switch (recording.types[i]) {
+                    case CARD_PLACED:
+                        placedBefore++;
+                        break;
+                    case SCORE:
+                        scoredBefore++;
+                        finalScores[p] = recording.value[i];
+                        break;
+                    case FREEZE:
+                        if (recording.value[i] > 0) freezesBefore[p]++; // a freeze of 0 is never shown
+                        break;
+                    case KEY_PRESS:
+                        if (originalSpeed)
+                            awaitTime(start + recording.nanos[i] - recordingStart);
+                        int cards = placedBefore, scores = scoredBefore, freezes = freezesBefore[p];
+                        if (!await(() -> ui.placed() >= cards && ui.scored() >= scores && ui.freezes(p) >= freezes
+                                && !ui.isFrozen(p) && allTaken(game), stallNanos)) {
+                            ui.mismatch("stalled before press #" + presses + " (player " + p + ", slot " + recording.slot[i] + ")");
+                            return report(presses, start, ui);
+                        }
+                        MoveQueue moves = game.players[p].getMoves();
+                        if (!moves.tryOffer(recording.slot[i]))
+                            ui.mismatch("press #" + presses + " did not fit in player " + p + "'s queue");
+                        presses++;
+                        break;
+                    default:
+                }
+            }
+            int cards = placedBefore, scores = scoredBefore;
+            await(() -> ui.placed() >= cards && ui.scored() >= scores && allTaken(game)
+                    && (!ui.expectsWinners() || ui.announced()), stallNanos);
+            ui.checkComplete();
+            for (int i = 0; i < finalScores.length; i++)
+                if (game.players[i].getScore() != finalScores[i])
+                    ui.mismatch("player " + i + " finished with " + game.players[i].getScore() + " points instead of " + finalScores[i]);
+            return report(presses, start, ui);
+        } finally {
+            game.dealer.terminate();
+            runner.join();
+        }
+    }
+
+    private static Report report(int presses, long start, CheckingUserInterface ui) {
+        return new Report(presses, System.nanoTime() - start, ui.mismatchCount(), ui.mismatches());
+    }
+
+    private static boolean allTaken(HeadlessGame game) {
+        for (int i = 0; i < game.players.length; i++)
+            if (!game.players[i].getMoves().isEmpty()) return false;
+        return true;
+    }
+
+    private static boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) return false;
+            LockSupport.parkNanos(POLL_NANOS);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return true;
+    }
+
+    private static void awaitTime(long deadline) throws InterruptedException {
+        for (long left; (left = deadline - System.nanoTime()) > 0; ) {
+            LockSupport.parkNanos(left);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    private static Properties loadProperties(String filename) throws IOException {
+        Properties properties = new Properties();
+        Path path = Paths.get(filename);
+        try (InputStream is = Files.exists(path) ? Files.newInputStream(path) : Replay.class.getClassLoader().getResourceAsStream(filename)) {
+            if (is == null) throw new IOException("cannot read configuration file " + filename);
+            properties.load(is);
+        }
+        return properties;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: Replay <journal file> [Speed=Max|Original] [Config=config.properties] [Key=Value ...]");
+            System.exit(2);
+        }
+        Properties harness = new Properties();
+        Properties overrides = new Properties();
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("expected Key=Value, got: " + args[i]);
+            String key = args[i].substring(0, eq).trim();
+            String value = args[i].substring(eq + 1).trim();
+            (key.equals("Speed") || key.equals("Config") ? harness : overrides).put(key, value);
+        }
+        Properties game = loadProperties(harness.getProperty("Config", "config.properties"));
+        game.putAll(overrides);
+        boolean originalSpeed = "Original".equalsIgnoreCase(harness.getProperty("Speed", "Max"));
+
+        Recording recording = Recording.load(Paths.get(args[0]));
+        Report report = replay(recording, game, originalSpeed);
+        System.out.println(String.format(Locale.ROOT, "replayed %d events (%d presses, %d players) in %.2fs: %s",
+                recording.size(), report.presses, recording.players, report.durationNanos / 1e9,
+                report.matches() ? "identical" : report.mismatchCount + " mismatches"));
+        for (String mismatch : report.mismatches)
+            System.out.println("  " + mismatch);
+        System.exit(report.matches() ? 0 : 1);
+    }
+}
@@ -0,0 +1,272 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A user interface that keeps the state spectators see (cards, tokens, scores, freezes and the timer) and encodes it
+ * once per tick as a compact binary frame: a snapshot of the whole state, or a delta with only what changed since the
+ * last frame (a slot that changed many times in a tick is sent once, with its latest card and tokens). The server
+ * sends the same encoded frame to every spectator, so the cost of a game's feed does not grow with its spectators.
+ * Every call is also passed on to another user interface, if any.
+ * <p>
+ * Frame layout (big-endian):
+ * <pre>
+ *   int   length  - the number of bytes that follow
+ *   byte  kind    - SNAPSHOT or DELTA
+ *   int   tick    - the frame's number
+ *   short words   - the number of longs in a token mask (bit p of the mask: player p has a token on the slot)
+ *   byte  timer   - TIMER_UNCHANGED, TIMER_COUNTDOWN, TIMER_WARNING or TIMER_ELAPSED
+ *   long  millis  - the timer's value
+ *   short slots   - followed by (short slot, int card or -1, long[words] tokens) for each slot
+ *   short players - followed by (short player, int score, int freeze millis) for each player
+ *   short winners - followed by a short player id for each winner (once the game is over)
+ * </pre>
+ * A snapshot lists every slot and player; a delta lists only the changed ones.
+ */
+public class SpectatorFeed implements UserInterface {
+
+    public static final byte SNAPSHOT = 1;
+    public static final byte DELTA = 2;
+
+    public static final byte TIMER_UNCHANGED = 0;
+    public static final byte TIMER_COUNTDOWN = 1;
+    public static final byte TIMER_WARNING = 2;
+    public static final byte TIMER_ELAPSED = 3;
+
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 2 + 1 + 8 + 2 + 2 + 2;
+    private static final int PLAYER_SIZE = 2 + 4 + 4;
+
+    private final UserInterface next;
+    private final int words;
+
+    // the state, guarded by this
+    private final int[] cards;
+    private final long[][] tokens;
+    private final int[] scores;
+    private final int[] freezes;
+    private int[] winners = new int[0];
+    private byte timerKind = TIMER_UNCHANGED;
+    private long timerMillis;
+
+    // what changed since the last frame, guarded by this
+    private final boolean[] dirtySlots;
+    private final boolean[] dirtyPlayers;
+    private boolean dirtyTimer;
+    private boolean dirtyWinners;
+    private int tick;
+
+    /**
+     * @param config - the game configuration.
+     * @param next   - the user interface to pass every call on to (null for none).
+     */
+    public SpectatorFeed(Config config, UserInterface next) {
+        this.next = next;
+        words = (config.players + 63) / 64;
+        cards = new int[config.maxTableSize];
+        Arrays.fill(cards, -1);
+        tokens = new long[config.maxTableSize][words];
+        scores = new int[config.players];
+        freezes = new int[config.players];
+        dirtySlots = new boolean[config.maxTableSize];
+        dirtyPlayers = new boolean[config.players];
+    }
+
+    /**
+     * Encodes the next frame and starts a new tick. Called by the publisher only, which should hold this feed's lock
+     * if it encodes several frames in a tick (e.g. a delta for the current spectators and a snapshot for new ones).
+     *
+     * @param snapshot - true for a snapshot, false for a delta.
+     * @return - the encoded frame (read only, to be shared by the spectators), or null for a delta with no changes.
+     */
+    public synchronized ByteBuffer encode(boolean snapshot) {
+        int slots = 0, players = 0;
+        for (int slot = 0; slot < cards.length; slot++)
+            if (snapshot || dirtySlots[slot]) slots++;
+        for (int player = 0; player < scores.length; player++)
+            if (snapshot || dirtyPlayers[player]) players++;
+        boolean timer = (snapshot || dirtyTimer) && timerKind != TIMER_UNCHANGED;
+        boolean ended = snapshot || dirtyWinners;
+        if (!snapshot && slots == 0 && players == 0 && !timer && !dirtyWinners) return null;
+
+        int size = HEADER_SIZE + slots * (2 + 4 + 8 * words) + players * PLAYER_SIZE + (ended ? winners.length * 2 : 0);
+        ByteBuffer frame = ByteBuffer.allocateDirect(size);
+        frame.putInt(size - 4).put(snapshot ? SNAPSHOT : DELTA).putInt(++tick).putShort((short) words);
+        frame.put(timer ? timerKind : TIMER_UNCHANGED).putLong(timer ? timerMillis : 0);
+        frame.putShort((short) slots);
+        for (int slot = 0; slot < cards.length; slot++)
+            if (snapshot || dirtySlots[slot]) {
+                frame.putShort((short) slot).putInt(cards[slot]);
+                for (long word : tokens[slot])
+                    frame.putLong(word);
+                dirtySlots[slot] = false;
+            }
+        frame.putShort((short) players);
+        for (int player = 0; player < scores.length; player++)
+            if (snapshot || dirtyPlayers[player]) {
+                frame.putShort((short) player).putInt(scores[player]).putInt(freezes[player]);
+                dirtyPlayers[player] = false;
+            }
+        frame.putShort((short) (ended ? winners.length : 0));
+        if (ended)
+            for (int winner : winners)
+                frame.putShort((short) winner);
+        dirtyTimer = dirtyWinners = false;
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    private void slotChanged(int slot) {
+        dirtySlots[slot] = true;
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        synchronized (this) {
+            cards[slot] = card;
+            slotChanged(slot);
+        }
+        if (next != null) next.placeCard(card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        synchronized (this) {
+            cards[slot] = -1;
+            slotChanged(slot);
+        }
+        if (next != null) next.removeCard(slot);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots, int count) {
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                this.cards[slots[i]] = cards[i];
+                slotChanged(slots[i]);
+            }
+        }
+        if (next != null) next.placeCards(cards, slots, count);
+    }
+
+    @Override
+    public void moveCards(int[] cards, int[] from, int[] to, int count) {
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                this.cards[from[i]] = -1;
+                slotChanged(from[i]);
+                this.cards[to[i]] = cards[i];
+                slotChanged(to[i]);
+            }
+        }
+        if (next != null) next.moveCards(cards, from, to, count);
+    }
+
+    @Override
+    public void removeCards(int[] slots, int count) {
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                cards[slots[i]] = -1;
+                slotChanged(slots[i]);
+            }
+        }
+        if (next != null) next.removeCards(slots, count);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        synchronized (this) {
+            tokens[slot][player >> 6] |= 1L << player;
+            slotChanged(slot);
+        }
+        if (next != null) next.placeToken(player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        synchronized (this) {
+            for (int slot = 0; slot < tokens.length; slot++)
+                removeTokensFrom(slot);
+        }
+        if (next != null) next.removeTokens();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        synchronized (this) {
+            removeTokensFrom(slot);
+        }
+        if (next != null) next.removeTokens(slot);
+    }
+
+    private void removeTokensFrom(int slot) {
+        for (long word : tokens[slot])
+            if (word != 0) {
+                Arrays.fill(tokens[slot], 0);
+                slotChanged(slot);
+                return;
+            }
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        synchronized (this) {
+            tokens[slot][player >> 6] &= ~(1L << player);
+            slotChanged(slot);
+        }
+        if (next != null) next.removeToken(player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        setTimer(warn ? TIMER_WARNING : TIMER_COUNTDOWN, millies);
+        if (next != null) next.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        setTimer(TIMER_ELAPSED, millies);
+        if (next != null) next.setElapsed(millies);
+    }
+
+    private synchronized void setTimer(byte kind, long millis) {
+        timerKind = kind;
+        timerMillis = millis;
+        dirtyTimer = true;
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        synchronized (this) {
+            int millis = (int) Math.max(0, millies);
+            if (freezes[player] != millis) {
+                freezes[player] = millis;
+                dirtyPlayers[player] = true;
+            }
+        }
+        if (next != null) next.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        synchronized (this) {
+            scores[player] = score;
+            dirtyPlayers[player] = true;
+        }
+        if (next != null) next.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        synchronized (this) {
+            winners = players.clone();
+            dirtyWinners = true;
+        }
+        if (next != null) next.announceWinner(players);
+    }
+
+    @Override
+    public void dispose() {
+        if (next != null) next.dispose();
+    }
+}
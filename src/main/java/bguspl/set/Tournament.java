@@ -0,0 +1,352 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays many headless games between computer player strategies in parallel and aggregates the results: win rates,
+ * points and penalties per entrant, and the distributions of the sets per game and of the game length.
+ * <p>
+ * Every game is a separate HeadlessGame (its own Env, Table, Dealer and players) with its own seed, and the entrants
+ * change seats from game to game. Each worker thread plays games and adds their results to its own Tally (no shared
+ * counters, no locks); the tallies are merged when the workers are done. The results of every game are written to a
+ * compact CSV file (one line per game, in the order the games ended).
+ * <p>
+ * Usage: java -cp target/classes bguspl.set.Tournament [Key=Value ...]
+ * <p>
+ * Harness keys: Entrants (comma separated Strategy[:Skill], e.g. Smart:0.9,Smart:0.6,Random; one player each),
+ * Games, Parallelism (the number of games played at a time), Seed (the seed of the game seeds) and Output (the results
+ * file). Every other key is a game configuration property; the defaults make a game last a few seconds (short
+ * reaction times, freezes and turns), so override them together to keep the strategies' relative speed realistic.
+ */
+public class Tournament {
+
+    private static final String[] HARNESS_KEYS = {"Entrants", "Games", "Parallelism", "Seed", "Output"};
+
+    /**
+     * The number of result lines a worker collects before writing them to the results file.
+     */
+    private static final int WRITE_BATCH = 256;
+
+    private static Properties defaultGameProperties() {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("HumanPlayers", "0");
+        properties.put("Hints", "False");
+        properties.put("Jmx", "False");
+        properties.put("Journal", "False");
+        properties.put("BotReactionSeconds", "0.01");
+        properties.put("BotReactionDeviationSeconds", "0.0025");
+        properties.put("TurnTimeoutSeconds", "1");
+        properties.put("TurnTimeoutWarningSeconds", "0");
+        properties.put("PointFreezeSeconds", "0.03");
+        properties.put("PenaltyFreezeSeconds", "0.05");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        return properties;
+    }
+
+    /**
+     * A computer player configuration taking part in the tournament.
+     */
+    static class Entrant {
+        final String name;
+        final String strategy;
+        final String skill;
+
+        Entrant(String name) {
+            this.name = name;
+            int colon = name.indexOf(':');
+            strategy = colon < 0 ? name : name.substring(0, colon);
+            skill = colon < 0 ? "0.9" : name.substring(colon + 1);
+        }
+    }
+
+    /**
+     * The results of the games played by one worker thread (written by that thread only).
+     */
+    static class Tally {
+
+        volatile long games; // read by the progress report
+        long failed;
+        long sets;
+        long claims;
+        final double[] wins;      // a game with k winners counts 1/k for each of them
+        final long[] points;
+        final long[] penalties;
+        final LatencyHistogram setsPerGame = new LatencyHistogram();
+        final LatencyHistogram gameLength = new LatencyHistogram();
+
+        Tally(int entrants) {
+            wins = new double[entrants];
+            points = new long[entrants];
+            penalties = new long[entrants];
+        }
+
+        /**
+         * Adds the results of a game.
+         *
+         * @param seating - the entrant in each seat (player id).
+         * @param result  - the game's result.
+         */
+        void add(int[] seating, HeadlessGame.Result result) {
+            int best = 0, winners = 0;
+            for (int score : result.scores)
+                best = Math.max(best, score);
+            for (int score : result.scores)
+                if (score == best) winners++;
+            for (int seat = 0; seat < seating.length; seat++) {
+                int entrant = seating[seat];
+                if (result.scores[seat] == best) wins[entrant] += 1.0 / winners;
+                points[entrant] += result.scores[seat];
+                penalties[entrant] += result.metrics.penalties(seat);
+            }
+            sets += result.metrics.sets.sum();
+            claims += result.metrics.claims.sum();
+            setsPerGame.record(result.metrics.sets.sum());
+            gameLength.record(result.durationNanos);
+            games = games + 1;
+        }
+
+        void add(Tally other) {
+            games += other.games;
+            failed += other.failed;
+            sets += other.sets;
+            claims += other.claims;
+            for (int i = 0; i < wins.length; i++) {
+                wins[i] += other.wins[i];
+                points[i] += other.points[i];
+                penalties[i] += other.penalties[i];
+            }
+            setsPerGame.add(other.setsPerGame);
+            gameLength.add(other.gameLength);
+        }
+    }
+
+    private final Entrant[] entrants;
+    private final Properties game;
+    private final long games;
+    private final long seed;
+    private final Writer output;
+    private final AtomicLong nextGame = new AtomicLong();
+
+    /**
+     * @param entrants - the computer player configurations (one player each).
+     * @param game     - the game configuration (the players and their strategies are set per game).
+     * @param games    - the number of games to play.
+     * @param seed     - the seed the games' seeds are derived from.
+     * @param output   - where the per game results are written (null for nowhere).
+     */
+    Tournament(Entrant[] entrants, Properties game, long games, long seed, Writer output) {
+        this.entrants = entrants;
+        this.game = game;
+        this.games = games;
+        this.seed = seed;
+        this.output = output;
+    }
+
+    /**
+     * @return - the seed of a game (so any game of the tournament can be played again on its own). The game number is
+     * mixed before it meets the tournament seed, so tournaments with nearby seeds play different games.
+     */
+    static long gameSeed(long seed, long game) {
+        return new SplittableRandom(seed ^ mix(game)).nextLong();
+    }
+
+    /**
+     * @return - the bits of the value scrambled (the SplitMix64 finalizer).
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Plays games (taking the next game number each time) until all the games were handed out.
+     */
+    private void work(Tally tally) {
+        StringBuilder lines = new StringBuilder();
+        int pending = 0;
+        int[] seating = new int[entrants.length];
+        for (long number; (number = nextGame.getAndIncrement()) < games; ) {
+            long gameSeed = gameSeed(seed, number);
+            StringBuilder strategies = new StringBuilder(), skills = new StringBuilder();
+            for (int seat = 0; seat < seating.length; seat++) {
+                seating[seat] = (int) ((seat + number) % entrants.length);
+                strategies.append(seat == 0 ? "" : ",").append(entrants[seating[seat]].strategy);
+                skills.append(seat == 0 ? "" : ",").append(entrants[seating[seat]].skill);
+            }
+            Properties properties = new Properties();
+            properties.putAll(game);
+            properties.put("ComputerPlayers", Integer.toString(entrants.length));
+            properties.put("ComputerPlayerStrategy", strategies.toString());
+            properties.put("BotSkill", skills.toString());
+            properties.put("Seed", Long.toString(gameSeed));
+
+            HeadlessGame.Result result;
+            try {
+                result = new HeadlessGame(properties).play();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                tally.failed++;
+                System.err.println("game " + number + " (seed " + gameSeed + ") failed: " + e);
+                continue;
+            }
+            tally.add(seating, result);
+            if (output != null) {
+                appendLine(lines, number, gameSeed, seating, result);
+                if (++pending == WRITE_BATCH) {
+                    write(lines);
+                    pending = 0;
+                }
+            }
+        }
+        if (output != null) write(lines);
+    }
+
+    private void appendLine(StringBuilder lines, long number, long gameSeed, int[] seating, HeadlessGame.Result result) {
+        lines.append(number).append(',').append(gameSeed).append(',')
+                .append(TimeUnit.NANOSECONDS.toMillis(result.durationNanos)).append(',')
+                .append(result.metrics.sets.sum()).append(',').append(result.metrics.claims.sum()).append(',')
+                .append(seating[0]);
+        int[] seatOf = new int[seating.length];
+        for (int seat = 0; seat < seating.length; seat++)
+            seatOf[seating[seat]] = seat;
+        for (int seat : seatOf)
+            lines.append(',').append(result.scores[seat]).append(',').append(result.metrics.penalties(seat));
+        lines.append('\n');
+    }
+
+    private void write(StringBuilder lines) {
+        if (lines.length() == 0) return;
+        synchronized (output) {
+            try {
+                output.append(lines);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        lines.setLength(0);
+    }
+
+    /**
+     * Plays all the games.
+     *
+     * @param parallelism - the number of games played at a time.
+     * @return - the merged results.
+     * @throws InterruptedException - if the calling thread was interrupted (the games being played are terminated).
+     */
+    Tally run(int parallelism) throws InterruptedException {
+        Tally[] tallies = new Tally[parallelism];
+        Thread[] workers = new Thread[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            Tally tally = tallies[i] = new Tally(entrants.length);
+            workers[i] = new Thread(() -> work(tally), "tournament-" + (i + 1));
+            workers[i].start();
+        }
+        long start = System.nanoTime(), reported = 0;
+        try {
+            for (Thread worker : workers) {
+                while (worker.isAlive()) {
+                    worker.join(TimeUnit.SECONDS.toMillis(5));
+                    long played = 0;
+                    for (Tally tally : tallies)
+                        played += tally.games;
+                    if (worker.isAlive() && played > reported) {
+                        reported = played;
+                        System.out.println(String.format(Locale.ROOT, "%d/%d games, %.1f games/s", played, games,
+                                played / seconds(System.nanoTime() - start)));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers)
+                worker.interrupt();
+            for (Thread worker : workers)
+                worker.join();
+            throw e;
+        }
+        Tally total = new Tally(entrants.length);
+        for (Tally tally : tallies)
+            total.add(tally);
+        return total;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static boolean isHarnessKey(String key) {
+        for (String harnessKey : HARNESS_KEYS)
+            if (harnessKey.equals(key)) return true;
+        return false;
+    }
+
+    private void printSummary(Tally total, long durationNanos) {
+        double wallSeconds = seconds(durationNanos);
+        System.out.println(String.format(Locale.ROOT, "%d games in %.2fs: %.1f games/s, %d failed",
+                total.games, wallSeconds, total.games / wallSeconds, total.failed));
+        System.out.println(String.format(Locale.ROOT, "%-16s %8s %10s %10s", "entrant", "win %", "points/g", "penalty/g"));
+        double perGame = Math.max(1, total.games);
+        for (int i = 0; i < entrants.length; i++)
+            System.out.println(String.format(Locale.ROOT, "%-16s %8.2f %10.2f %10.2f", entrants[i].name,
+                    100 * total.wins[i] / perGame, total.points[i] / perGame, total.penalties[i] / perGame));
+        LatencyHistogram sets = total.setsPerGame, length = total.gameLength;
+        System.out.println(String.format(Locale.ROOT, "sets per game: mean=%.2f p10=%d p50=%d p90=%d max=%d (%.2f claims per set)",
+                sets.mean(), sets.percentile(10), sets.percentile(50), sets.percentile(90), sets.max(),
+                total.sets == 0 ? 0.0 : (double) total.claims / total.sets));
+        System.out.println(String.format(Locale.ROOT, "game length: mean=%.2fs p10=%.2fs p50=%.2fs p90=%.2fs p99=%.2fs max=%.2fs",
+                seconds((long) length.mean()), seconds(length.percentile(10)), seconds(length.percentile(50)),
+                seconds(length.percentile(90)), seconds(length.percentile(99)), seconds(length.max())));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties harness = new Properties();
+        Properties game = defaultGameProperties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("expected Key=Value, got: " + arg);
+            String key = arg.substring(0, eq).trim();
+            String value = arg.substring(eq + 1).trim();
+            (isHarnessKey(key) ? harness : game).put(key, value);
+        }
+
+        String[] names = harness.getProperty("Entrants", "Smart:0.9,Smart:0.6,Random").split(",");
+        Entrant[] entrants = new Entrant[names.length];
+        for (int i = 0; i < names.length; i++)
+            entrants[i] = new Entrant(names[i].trim());
+        long games = Long.parseLong(harness.getProperty("Games", "1000"));
+        int parallelism = Integer.parseInt(harness.getProperty("Parallelism",
+                Integer.toString(2 * Runtime.getRuntime().availableProcessors())));
+        String seedString = harness.getProperty("Seed", "").trim();
+        long seed = seedString.isEmpty() ? System.nanoTime() : Long.parseLong(seedString);
+        Path outputPath = Paths.get(harness.getProperty("Output", "target/tournament.csv"));
+        if (outputPath.getParent() != null) Files.createDirectories(outputPath.getParent());
+
+        System.out.println("tournament seed: " + seed);
+        try (Writer output = Files.newBufferedWriter(outputPath)) {
+            output.append("game,seed,duration_ms,sets,claims,first_seat");
+            for (int i = 0; i < entrants.length; i++)
+                output.append(",score_").append(Integer.toString(i)).append(",penalties_").append(Integer.toString(i));
+            output.append('\n');
+            Tournament tournament = new Tournament(entrants, game, games, seed, output);
+            long start = System.nanoTime();
+            Tally total = tournament.run(parallelism);
+            tournament.printSummary(total, System.nanoTime() - start);
+        }
+        System.out.println("results written to " + outputPath + " (score_i and penalties_i are entrant i's)");
+    }
+}
@@ -18,6 +18,40 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images of several slots, dealt together (the user interface may show them one after the other).
+     * @param cards - the card ids.
+     * @param slots - the slot numbers, in the same order as the cards.
+     * @param count - the number of cards (the first ones in the arrays).
+     */
+    default void placeCards(int[] cards, int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            placeCard(cards[i], slots[i]);
+    }
+
+    /**
+     * Draw an empty card image in several slots, cleared together.
+     * @param slots - the slot numbers.
+     * @param count - the number of slots (the first ones in the array).
+     */
+    default void removeCards(int[] slots, int count) {
+        for (int i = 0; i < count; i++)
+            removeCard(slots[i]);
+    }
+
+    /**
+     * Move the card images of several slots to other slots (the cards of extra slots, moved down when the table
+     * shrinks back).
+     * @param cards - the card ids.
+     * @param from  - the slot numbers the cards leave, in the same order.
+     * @param to    - the (empty) slot numbers the cards go to, in the same order.
+     * @param count - the number of cards (the first ones in the arrays).
+     */
+    default void moveCards(int[] cards, int[] from, int[] to, int count) {
+        removeCards(from, count);
+        placeCards(cards, to, count);
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
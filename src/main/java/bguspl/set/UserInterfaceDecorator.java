@@ -2,6 +2,7 @@ package bguspl.set;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -10,95 +11,136 @@ public class UserInterfaceDecorator implements UserInterface {
     private final Logger logger;
     private final Util util;
     private final UserInterface ui;
+    private final GameMetrics metrics;
 
     public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui) {
+        this(logger, util, ui, new GameMetrics(0));
+    }
+
+    public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui, GameMetrics metrics) {
         this.ui = ui;
         this.logger = logger;
         this.util = util;
+        this.metrics = metrics;
 
         if (ui == null) System.out.println("Running without a user interface. Check logs.");
     }
 
+    /**
+     * Counts a user interface call.
+     *
+     * @return - true iff there is a user interface to pass the call on to.
+     */
+    private boolean forward() {
+        if (ui == null) {
+            metrics.uiEventsDropped.increment();
+            return false;
+        }
+        metrics.uiEvents.increment();
+        return true;
+    }
+
     @Override
     public void placeCard(int card, int slot) {
-        logger.severe("placing card " + card + " in slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("placing card " + card + " in slot " + slot);
         util.spin();
-        if (ui != null) ui.placeCard(card, slot);
+        if (forward()) ui.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        logger.severe("removing card from slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("removing card from slot " + slot);
+        util.spin();
+        if (forward()) ui.removeCard(slot);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots, int count) {
+        if (logger.isLoggable(Level.FINE)) logger.fine("placing " + count + " cards");
+        util.spin();
+        if (forward()) ui.placeCards(cards, slots, count);
+    }
+
+    @Override
+    public void moveCards(int[] cards, int[] from, int[] to, int count) {
+        if (logger.isLoggable(Level.FINE)) logger.fine("moving " + count + " cards");
+        util.spin();
+        if (forward()) ui.moveCards(cards, from, to, count);
+    }
+
+    @Override
+    public void removeCards(int[] slots, int count) {
+        if (logger.isLoggable(Level.FINE)) logger.fine("removing " + count + " cards");
         util.spin();
-        if (ui != null) ui.removeCard(slot);
+        if (forward()) ui.removeCards(slots, count);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("player " + (player + 1) + " placing token on slot " + slot);
         util.spin();
-        if (ui != null) ui.placeToken(player, slot);
+        if (forward()) ui.placeToken(player, slot);
     }
 
     @Override
     public void removeTokens() {
-        logger.severe("removing all tokens");
+        if (logger.isLoggable(Level.FINE)) logger.fine("removing all tokens");
         util.spin();
-        if (ui != null) ui.removeTokens();
+        if (forward()) ui.removeTokens();
     }
 
     @Override
     public void removeTokens(int slot) {
-        logger.severe("removing tokens from slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("removing tokens from slot " + slot);
         util.spin();
-        if (ui != null) ui.removeTokens(slot);
+        if (forward()) ui.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        if (logger.isLoggable(Level.FINE)) logger.fine("removing player " + (player + 1) + " token from slot " + slot);
         util.spin();
-        if (ui != null) ui.removeToken(player, slot);
+        if (forward()) ui.removeToken(player, slot);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
-        if (ui != null) ui.setCountdown(millies, warn);
+        if ((!warn || millies % 1000L == 0L) && logger.isLoggable(Level.FINE))
+            logger.fine("updating countdown to " + millies);
+        if (forward()) ui.setCountdown(millies, warn);
     }
 
     @Override
     public void setElapsed(long millies) {
-        logger.severe("updating elapsed time to " + millies);
+        if (logger.isLoggable(Level.FINE)) logger.fine("updating elapsed time to " + millies);
         util.spin();
-        if (ui != null) ui.setElapsed(millies);
+        if (forward()) ui.setElapsed(millies);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        if (logger.isLoggable(Level.FINE)) logger.fine("setting player " + (player + 1) + " freeze to " + millies);
         util.spin();
-        if (ui != null) ui.setFreeze(player, millies);
+        if (forward()) ui.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        if (logger.isLoggable(Level.FINE)) logger.fine("setting player " + (player + 1) + " score to " + score);
         util.spin();
-        if (ui != null) ui.setScore(player, score);
+        if (forward()) ui.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
         List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
         logger.severe("announcing winner(s): " + String.join(", ", winners));
-        if (ui != null) ui.announceWinner(players);
+        if (forward()) ui.announceWinner(players);
     }
 
     @Override
     public void dispose() {
         logger.severe("disposing of user interface elements");
-        if (ui != null) ui.dispose();
+        if (forward()) ui.dispose();
     }
 }
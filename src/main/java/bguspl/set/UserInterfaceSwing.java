@@ -4,10 +4,14 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -24,6 +28,14 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final WinnerPanel winnerPanel;
     private final Config config;
 
+    /**
+     * The card changes waiting to be drawn (slot, card or -1 for none), in order, guarded by itself. The cards of a
+     * deal are drawn one per tick of the deal timer (TableDelaySeconds apart), so the deal is animated on the event
+     * dispatch thread rather than paced by the dealer thread.
+     */
+    private final ArrayDeque<int[]> dealing = new ArrayDeque<>();
+    private final Timer dealTimer;
+
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
@@ -31,6 +43,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
 
         this.config = config;
+        dealTimer = new Timer((int) Math.max(1, config.tableDelayMillis), e -> dealNext());
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -103,10 +116,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private class GamePanel extends JLayeredPane {
 
         private final Image emptyCard;
-        private final Image[] deck;
+        private final Map<Integer, Image> cardImages = new HashMap<>();
         private final Image[][] grid;
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
+        private final int rows;
 
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
@@ -117,21 +131,18 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private GamePanel() {
 
-            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
+            // the table's rows, and a row for every columns extra slots
+            rows = (config.maxTableSize + config.columns - 1) / config.columns;
+            setPreferredSize(new Dimension(config.columns * config.cellWidth, rows * config.cellHeight));
 
-            // init deck and load all pictures from png files
+            // the card pictures are loaded from png files when the cards are first placed
             assert config.featureSize < 10; // otherwise there will be naming conflicts
-
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
             emptyCard = loadImageResource("cards/empty_card.png");
 
-            grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
+            grid = new Image[rows][config.columns];
+            tokenText = new JLabel[rows][config.columns];
+            playerTokens = new boolean[config.players][rows][config.columns];
+            for (int row = 0; row < rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
                     grid[row][column] = emptyCard;
@@ -151,11 +162,38 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void placeCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = deck[card];
+            grid[row][column] = cardImage(card);
             validate();
             repaint();
         }
 
+        /**
+         * @return - the card's picture (loaded once), or one drawn with its features for the variants with no pictures
+         * (drawn each time: a large variant's deck is too big to keep a picture of every card).
+         */
+        private Image cardImage(int card) {
+            Image image = cardImages.get(card);
+            if (image != null) return image;
+            String features = intInBaseToPaddedString(card, config.featureCount, config.featureSize);
+            URL imageResource = getClass().getClassLoader().getResource("cards/" + features + ".png");
+            if (imageResource == null) return drawCard(features);
+            image = new ImageIcon(imageResource).getImage();
+            cardImages.put(card, image);
+            return image;
+        }
+
+        private Image drawCard(String features) {
+            BufferedImage image = new BufferedImage(config.cellWidth, config.cellHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.drawImage(emptyCard, 0, 0, config.cellWidth, config.cellHeight, null);
+            g.setColor(Color.BLACK);
+            g.setFont(new Font("Monospaced", Font.BOLD, Math.min(config.fontSize, config.cellWidth * 3 / (2 * features.length()))));
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(features, (config.cellWidth - metrics.stringWidth(features)) / 2, config.cellHeight / 2);
+            g.dispose();
+            return image;
+        }
+
         private void removeCard(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
@@ -172,7 +210,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
 
         private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
+            for (int i = 0; i < config.maxTableSize; i++)
                 removeTokens(i);
         }
 
@@ -206,7 +244,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         @Override
         public void paintComponent(Graphics g) {
             // draw card images
-            for (int row = 0; row < config.rows; row++)
+            for (int row = 0; row < rows; row++)
                 for (int column = 0; column < config.columns; column++)
                     g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
         }
@@ -276,12 +314,52 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        if (!deal(card, slot)) gamePanel.placeCard(slot, card);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        if (!deal(-1, slot)) gamePanel.removeCard(slot);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots, int count) {
+        if (config.tableDelayMillis <= 0) {
+            UserInterface.super.placeCards(cards, slots, count);
+            return;
+        }
+        synchronized (dealing) {
+            for (int i = 0; i < count; i++)
+                dealing.add(new int[]{slots[i], cards[i]});
+        }
+        dealTimer.start();
+    }
+
+    /**
+     * Queues a card change behind the deal being drawn, if any (so the changes are drawn in order).
+     *
+     * @return - true iff the change was queued.
+     */
+    private boolean deal(int card, int slot) {
+        synchronized (dealing) {
+            if (dealing.isEmpty()) return false;
+            dealing.add(new int[]{slot, card});
+            return true;
+        }
+    }
+
+    /**
+     * Draws the next queued card change (on the event dispatch thread, at each tick of the deal timer).
+     */
+    private void dealNext() {
+        int[] change;
+        synchronized (dealing) {
+            change = dealing.poll();
+            if (change == null || dealing.isEmpty()) dealTimer.stop();
+        }
+        if (change == null) return;
+        if (change[1] >= 0) gamePanel.placeCard(change[0], change[1]);
+        else gamePanel.removeCard(change[0]);
     }
 
     @Override
@@ -333,6 +411,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void dispose() {
+        dealTimer.stop();
         super.dispose();
     }
 }
@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -40,6 +41,28 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Checks if there is a set among the given cards (what findSets(deck, 1) tells, without a list of the cards or of
+     * the sets).
+     *
+     * @param cards - an array of card ids.
+     * @param count - the number of cards (the first ones in the array).
+     * @return - true iff there is a legal set among the cards.
+     */
+    default boolean hasSet(int[] cards, int count) {
+        List<Integer> deck = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) deck.add(cards[i]);
+        return !findSets(deck, 1).isEmpty();
+    }
+
+    /**
+     * Finds the card that completes a set (for the default 3 features per card: the third card of a pair).
+     *
+     * @param cards - config.featureSize - 1 distinct card ids (only the first config.featureSize - 1 are used).
+     * @return - the id of the only card that forms a legal set with the given cards, or -1 if there is none.
+     */
+    int completeSet(int[] cards);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -13,13 +14,27 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * Where set searches are accounted (null for none).
+     */
+    private final GameMetrics metrics;
+
     public UtilImpl(Config config) {
+        this(config, null);
+    }
+
+    public UtilImpl(Config config, GameMetrics metrics) {
         this.config = config;
+        this.metrics = metrics;
     }
 
     private void cardToFeatures(int card, int[] features) {
+        cardToFeatures(card, features, 0);
+    }
+
+    private void cardToFeatures(int card, int[] features, int offset) {
         for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
+            features[offset + i] = card % config.featureSize;
             card /= config.featureSize;
         }
     }
@@ -40,32 +55,40 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
-
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
-
-            if (sameSame == butDifferent) return false;
+        if (cards.length < 2) return false;
+        // features from the least significant: each one is all the same (one value) or all different (one per card)
+        for (int i = 0, weight = 1; i < config.featureCount; ++i, weight *= config.featureSize) {
+            int values = 0;
+            for (int card : cards)
+                values |= 1 << (card / weight % config.featureSize);
+            int count = Integer.bitCount(values);
+            if (count != 1 && count != cards.length) return false;
         }
         return true;
     }
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        if (metrics == null) return searchSets(deck, count);
+        long start = System.nanoTime();
+        try {
+            return searchSets(deck, count);
+        } finally {
+            metrics.solverCalls.increment();
+            metrics.solverNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private List<int[]> searchSets(List<Integer> deck, int count) {
+        if (config.featureSize == 3) return completeSets(deck, count);
+        if (config.featureSize == 2) return combinationSets(deck, count); // any two cards: nothing to prune
+        return searchLargerSets(deck, count);
+    }
+
+    /**
+     * Finds sets by trying every combination of featureSize cards (the search the other ones are checked against).
+     */
+    List<int[]> combinationSets(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
@@ -90,6 +113,197 @@ public class UtilImpl implements Util {
         return sets;
     }
 
+    /**
+     * The number of cards from which a search for all the sets of more than 3 cards runs in parallel.
+     */
+    static final int PARALLEL_CARDS = 48;
+
+    /**
+     * Finds sets of more than 3 cards (see SetSearch). A search for all the sets (count == Integer.MAX_VALUE) of a
+     * large board runs in parallel, one task per first card, and the sets are returned in the same order as by a
+     * sequential search.
+     */
+    private List<int[]> searchLargerSets(List<Integer> deck, int count) {
+        int n = deck.size();
+        int[] cards = new int[n];
+        int[] features = new int[n * config.featureCount];
+        CardMap index = new CardMap(n);
+        for (int i = 0; i < n; i++) {
+            cards[i] = deck.get(i);
+            cardToFeatures(cards[i], features, i * config.featureCount);
+            index.put(cards[i], i);
+        }
+        if (n < PARALLEL_CARDS || count != Integer.MAX_VALUE) {
+            LinkedList<int[]> sets = new LinkedList<>();
+            SetSearch search = new SetSearch(cards, features, index, sets, count);
+            for (int first = 0; first < n && sets.size() < count; first++)
+                search.from(first);
+            return sets;
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<int[]>[] found = new List[n];
+        IntStream.range(0, n).parallel().forEach(first -> {
+            found[first] = new ArrayList<>();
+            new SetSearch(cards, features, index, found[first], count).from(first);
+        });
+        LinkedList<int[]> sets = new LinkedList<>();
+        for (List<int[]> first : found) sets.addAll(first);
+        return sets;
+    }
+
+    /**
+     * A depth first search for sets of featureSize cards, by increasing index, that propagates the constraint of
+     * every feature: the values of a feature among the cards chosen so far are kept as a bit mask, and a card can be
+     * added only if each feature stays all the same (one value) or all different (one value per card). The last card
+     * is not searched for: the chosen cards determine it, and it is looked up by its id.
+     */
+    private final class SetSearch {
+        private final int[] cards;
+        private final int[] features;
+        private final CardMap index;
+        private final List<int[]> sets;
+        private final int count;
+        private final int[] chosen = new int[config.featureSize];
+        private final int[] masks = new int[config.featureSize * config.featureCount]; // per depth and feature
+
+        SetSearch(int[] cards, int[] features, CardMap index, List<int[]> sets, int count) {
+            this.cards = cards;
+            this.features = features;
+            this.index = index;
+            this.sets = sets;
+            this.count = count;
+        }
+
+        /**
+         * Finds the sets whose first card (by index) is the given one.
+         */
+        void from(int first) {
+            chosen[0] = first;
+            for (int i = 0; i < config.featureCount; i++)
+                masks[i] = 1 << features[first * config.featureCount + i];
+            search(1);
+        }
+
+        private void search(int depth) {
+            int featureCount = config.featureCount;
+            int previous = (depth - 1) * featureCount;
+            if (depth == config.featureSize - 1) {
+                int all = (1 << config.featureSize) - 1, card = 0;
+                for (int i = 0; i < featureCount; i++) {
+                    int mask = masks[previous + i];
+                    int value = Integer.bitCount(mask) == 1 ? mask : all & ~mask; // the same value or the missing one
+                    card = card * config.featureSize + Integer.numberOfTrailingZeros(value);
+                }
+                int last = index.get(card);
+                if (last > chosen[depth - 1]) {
+                    int[] set = new int[config.featureSize];
+                    for (int i = 0; i < depth; i++) set[i] = cards[chosen[i]];
+                    set[depth] = card;
+                    Arrays.sort(set);
+                    sets.add(set);
+                }
+                return;
+            }
+            int current = depth * featureCount;
+            candidates:
+            for (int next = chosen[depth - 1] + 1; next < cards.length && sets.size() < count; next++) {
+                for (int i = 0; i < featureCount; i++) {
+                    int mask = masks[previous + i] | 1 << features[next * featureCount + i];
+                    int values = Integer.bitCount(mask);
+                    if (values != 1 && values != depth + 1) continue candidates; // neither all same nor all different
+                    masks[current + i] = mask;
+                }
+                chosen[depth] = next;
+                search(depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Finds sets of 3 by completion: the cards are added one by one to a hashed presence set, and every set is found
+     * when its last card is added, by looking up the card that completes it with each card added before. This is
+     * O(n^2) lookups for n cards (instead of O(n^3) combinations) and stops at the first sets found, so it does not
+     * go through the whole deck of a large variant when there is a set early in it.
+     */
+    private List<int[]> completeSets(List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        CardMap seen = new CardMap();
+        int[] pair = new int[2];
+        int n = deck.size();
+        for (int i = 0; i < n; i++) {
+            int card = deck.get(i);
+            pair[1] = card;
+            for (int j = 0; j < i; j++) {
+                pair[0] = deck.get(j);
+                int third = seen.get(completeSet(pair));
+                if (third >= 0 && third < j) { // each set once: its first card is before its second
+                    int[] set = {deck.get(third), pair[0], card};
+                    Arrays.sort(set);
+                    sets.add(set);
+                    if (sets.size() >= count) return sets;
+                }
+            }
+            seen.put(card, i);
+        }
+        return sets;
+    }
+
+    /**
+     * The presence set and pair of a set search of 3 cards, per thread (reused by hasSet).
+     */
+    private static final ThreadLocal<CardMap> seenCards = ThreadLocal.withInitial(CardMap::new);
+    private static final ThreadLocal<int[]> pairs = ThreadLocal.withInitial(() -> new int[2]);
+
+    /**
+     * Like completeSets, but stops at the first set and allocates nothing once the thread's presence set is large
+     * enough (sets of other sizes are searched by findSets).
+     */
+    @Override
+    public boolean hasSet(int[] cards, int count) {
+        if (config.featureSize != 3) return Util.super.hasSet(cards, count);
+        CardMap seen = seenCards.get();
+        int[] pair = pairs.get();
+        try {
+            for (int i = 0; i < count; i++) {
+                pair[1] = cards[i];
+                for (int j = 0; j < i; j++) {
+                    pair[0] = cards[j];
+                    if (seen.contains(completeSet(pair))) return true;
+                }
+                seen.put(cards[i], i);
+            }
+            return false;
+        } finally {
+            seen.clear();
+        }
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        int size = config.featureSize;
+        int given = size - 1;
+        int allValues = size * (size - 1) / 2; // the sum of all the values of a feature
+        int card = 0;
+        // features from the most significant (see cardToFeatures)
+        for (int weight = (int) Math.pow(size, config.featureCount - 1); weight > 0; weight /= size) {
+            int first = cards[0] / weight % size;
+            int sum = first, seen = 1 << first;
+            boolean same = true;
+            for (int i = 1; i < given; i++) {
+                int value = cards[i] / weight % size;
+                same &= value == first;
+                sum += value;
+                seen |= 1 << value;
+            }
+            int value;
+            if (same) value = first;
+            else if (Integer.bitCount(seen) == given) value = allValues - sum; // all different: the missing value
+            else return -1;
+            card = card * size + value;
+        }
+        return card;
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
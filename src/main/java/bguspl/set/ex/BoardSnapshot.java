@@ -0,0 +1,218 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable view of the table: the card, version and tokens of every slot. The table publishes a new snapshot for
+ * every change through a single volatile reference (see Table.snapshot), so the readers (the player threads, the
+ * computer players, hints) see a consistent board without locking.
+ * <p>
+ * Snapshots share what did not change: the slots are kept in fixed size chunks, and a change copies only the slot
+ * that changed, its chunk and the (small) array of chunks.
+ */
+public final class BoardSnapshot {
+
+    private static final int CHUNK_BITS = 4;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * A slot of the board: its card (-1 if none), its version (changed whenever its card changes) and a mask of the
+     * players that have a token on it (bit p of word p / 64).
+     */
+    private static final class Slot {
+        final int card;
+        final int version;
+        final long[] tokens;
+
+        Slot(int card, int version, long[] tokens) {
+            this.card = card;
+            this.version = version;
+            this.tokens = tokens;
+        }
+    }
+
+    private final Slot[][] chunks;
+    private final int size;
+    private final int cards;
+    private final long sequence;
+
+    private BoardSnapshot(Slot[][] chunks, int size, int cards, long sequence) {
+        this.chunks = chunks;
+        this.size = size;
+        this.cards = cards;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @param size    - the number of slots.
+     * @param players - the number of players.
+     * @return - a board with no cards and no tokens.
+     */
+    static BoardSnapshot empty(int size, int players) {
+        Slot empty = new Slot(-1, 0, new long[(players + 63) / 64]);
+        Slot[][] chunks = new Slot[(size + CHUNK_SIZE - 1) >> CHUNK_BITS][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Slot[Math.min(CHUNK_SIZE, size - (i << CHUNK_BITS))];
+            Arrays.fill(chunks[i], empty);
+        }
+        return new BoardSnapshot(chunks, size, 0, 0);
+    }
+
+    private Slot slot(int slot) {
+        return chunks[slot >> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    /**
+     * @return - the number of slots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - the number of changes published before this snapshot (a reader can tell the board changed by it).
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * @return - the card in the slot, or -1 if none.
+     */
+    public int card(int slot) {
+        return slot(slot).card;
+    }
+
+    /**
+     * @return - the slot's version, changed whenever its card changes (placed or removed).
+     */
+    public int version(int slot) {
+        return slot(slot).version;
+    }
+
+    /**
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (slot(slot).tokens[player >> 6] & (1L << player)) != 0;
+    }
+
+    /**
+     * @return - the number of cards on the board.
+     */
+    public int countCards() {
+        return cards;
+    }
+
+    /**
+     * @return - the cards on the board, by slot.
+     */
+    public List<Integer> cards() {
+        List<Integer> list = new ArrayList<>(cards);
+        for (Slot[] chunk : chunks)
+            for (Slot slot : chunk)
+                if (slot.card >= 0) list.add(slot.card);
+        return list;
+    }
+
+    /**
+     * @param into - an array of at least countCards() cards.
+     * @return - the number of cards on the board, put in the array by slot (without allocating).
+     */
+    public int cards(int[] into) {
+        int count = 0;
+        for (Slot[] chunk : chunks)
+            for (Slot slot : chunk)
+                if (slot.card >= 0) into[count++] = slot.card;
+        return count;
+    }
+
+    /**
+     * @return - the slot the card is in, or -1 if it is not on the board.
+     */
+    public int slotOf(int card) {
+        for (int slot = 0; slot < size; slot++)
+            if (slot(slot).card == card) return slot;
+        return -1;
+    }
+
+    /**
+     * @return - the cards the player has tokens on, by slot.
+     */
+    public List<Integer> cardsOf(int player) {
+        List<Integer> list = new ArrayList<>();
+        for (int slot = 0; slot < size; slot++)
+            if (hasToken(player, slot) && card(slot) >= 0) list.add(card(slot));
+        return list;
+    }
+
+    /**
+     * @param into - an array to put the cards in (the cards beyond its length are not put).
+     * @return - the number of cards the player has tokens on, put in the array by slot (without allocating).
+     */
+    public int cardsOf(int player, int[] into) {
+        int count = 0;
+        for (int slot = 0; slot < size; slot++)
+            if (hasToken(player, slot) && card(slot) >= 0) {
+                if (count < into.length) into[count] = card(slot);
+                count++;
+            }
+        return count;
+    }
+
+    /**
+     * @param slot - the slot.
+     * @param card - the card placed in it, or -1 to remove its card (the tokens are not touched).
+     * @return - the board after the change (the slot's version changes).
+     */
+    BoardSnapshot withCard(int slot, int card) {
+        Slot current = slot(slot);
+        int count = cards + (card >= 0 ? 1 : 0) - (current.card >= 0 ? 1 : 0);
+        return with(slot, new Slot(card, current.version + 1, current.tokens), count);
+    }
+
+    /**
+     * @param slots - the slots.
+     * @param cards - the card placed in each slot, or null to remove their cards (the tokens are not touched).
+     * @param count - the number of slots (the first ones in the arrays).
+     * @return - the board after all the changes, as one change (each chunk that changed is copied once).
+     */
+    BoardSnapshot withCards(int[] slots, int[] cards, int count) {
+        Slot[][] copy = chunks.clone();
+        int total = this.cards;
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i], card = cards == null ? -1 : cards[i];
+            int c = slot >> CHUNK_BITS;
+            if (copy[c] == chunks[c]) copy[c] = chunks[c].clone();
+            Slot current = copy[c][slot & CHUNK_MASK];
+            total += (card >= 0 ? 1 : 0) - (current.card >= 0 ? 1 : 0);
+            copy[c][slot & CHUNK_MASK] = new Slot(card, current.version + 1, current.tokens);
+        }
+        return new BoardSnapshot(copy, size, total, sequence + 1);
+    }
+
+    /**
+     * @param player - the player.
+     * @param slot   - the slot.
+     * @param token  - true to place the player's token on the slot, false to remove it.
+     * @return - the board after the change (this board if there is none).
+     */
+    BoardSnapshot withToken(int player, int slot, boolean token) {
+        if (hasToken(player, slot) == token) return this;
+        Slot current = slot(slot);
+        long[] tokens = current.tokens.clone();
+        tokens[player >> 6] ^= 1L << player;
+        return with(slot, new Slot(current.card, current.version, tokens), cards);
+    }
+
+    private BoardSnapshot with(int slot, Slot changed, int cards) {
+        Slot[][] copy = chunks.clone();
+        Slot[] chunk = copy[slot >> CHUNK_BITS].clone();
+        chunk[slot & CHUNK_MASK] = changed;
+        copy[slot >> CHUNK_BITS] = chunk;
+        return new BoardSnapshot(copy, size, cards, sequence + 1);
+    }
+}
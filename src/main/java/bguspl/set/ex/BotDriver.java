@@ -0,0 +1,270 @@
+package bguspl.set.ex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the decisions of computer players (of all games) on a small pool of threads.
+ * A bot is called when it asks to be (after a delay, kept in a hashed timing wheel) or when it is woken up (e.g. when
+ * the table changed or its press was handled); in between it costs nothing. A bot is never called by two threads at
+ * the same time, and a wake up that arrives while it is deciding is not lost.
+ */
+public class BotDriver {
+
+    /**
+     * A computer player's decision logic.
+     */
+    public interface Bot {
+
+        /**
+         * Makes the bot's next decision (e.g. presses a key).
+         *
+         * @param nowNanos - the current System.nanoTime.
+         * @return - the delay (in nanoseconds) until the bot should be called again, PARK to be called when woken up,
+         * or DONE if the bot is finished.
+         */
+        long decide(long nowNanos);
+    }
+
+    public static final long PARK = -1;
+    public static final long DONE = -2;
+
+    private static final int IDLE = 0;      // parked: waits for a wake up
+    private static final int SCHEDULED = 1; // in the timing wheel
+    private static final int QUEUED = 2;    // waits for a pool thread
+    private static final int RUNNING = 3;
+    private static final int WOKEN = 4;     // running, and woken up meanwhile
+    private static final int FINISHED = 5;
+
+    /**
+     * A bot started on the driver (a node of the timing wheel, so scheduling allocates nothing).
+     */
+    public final class Task implements Runnable {
+
+        private final Bot bot;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private long deadline;
+        private long rounds;
+        private Task previous, next;   // the wheel bucket (timer thread only)
+        private Task nextPending;      // the pending stack
+
+        private Task(Bot bot) {
+            this.bot = bot;
+        }
+
+        /**
+         * Makes a parked bot decide again as soon as possible (a bot that waits for a delay keeps waiting).
+         */
+        public void wake() {
+            for (;;) {
+                int s = state.get();
+                if (s == IDLE) {
+                    if (state.compareAndSet(IDLE, QUEUED)) {
+                        pool.execute(this);
+                        return;
+                    }
+                } else if (s == RUNNING) {
+                    if (state.compareAndSet(RUNNING, WOKEN)) return;
+                } else return;
+            }
+        }
+
+        public boolean isFinished() {
+            return state.get() == FINISHED;
+        }
+
+        @Override
+        public void run() {
+            state.set(RUNNING);
+            long delay;
+            try {
+                delay = bot.decide(System.nanoTime());
+            } catch (RuntimeException e) {
+                state.set(FINISHED);
+                throw e;
+            }
+            if (delay == DONE) {
+                state.set(FINISHED);
+            } else if (delay == PARK) {
+                if (!state.compareAndSet(RUNNING, IDLE)) { // woken up while deciding
+                    state.set(QUEUED);
+                    pool.execute(this);
+                }
+            } else if (delay <= 0) {
+                state.set(QUEUED);
+                pool.execute(this);
+            } else {
+                deadline = System.nanoTime() + delay;
+                state.set(SCHEDULED);
+                schedule(this);
+            }
+        }
+    }
+
+    private static volatile BotDriver shared;
+
+    /**
+     * @return - the driver shared by all the games of the process (created on first use).
+     */
+    public static BotDriver shared() {
+        BotDriver driver = shared;
+        if (driver == null) {
+            synchronized (BotDriver.class) {
+                if (shared == null)
+                    shared = new BotDriver(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)),
+                            TimeUnit.MILLISECONDS.toNanos(1), 512);
+                driver = shared;
+            }
+        }
+        return driver;
+    }
+
+    private final ExecutorService pool;
+    private final Thread timer;
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final long tickNanos;
+    private final Task[] wheel;
+    private final int mask;
+    private final long startNanos;
+    private long tick;          // timer thread only
+    private int inWheel;        // timer thread only
+    private final AtomicReference<Task> pending = new AtomicReference<>();
+    private volatile boolean timerParked;
+
+    /**
+     * @param threads   - the number of threads that run the bots' decisions.
+     * @param tickNanos - the resolution of the timing wheel.
+     * @param buckets   - the number of buckets of the timing wheel (rounded up to a power of 2).
+     */
+    public BotDriver(int threads, long tickNanos, int buckets) {
+        AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "bot-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            this.threads.add(thread);
+            return thread;
+        });
+        this.tickNanos = tickNanos;
+        int size = Integer.highestOneBit(Math.max(2, buckets - 1)) << 1;
+        wheel = new Task[size];
+        mask = size - 1;
+        startNanos = System.nanoTime();
+        timer = new Thread(this::timerLoop, "bot-timer");
+        timer.setDaemon(true);
+        this.threads.add(timer);
+        timer.start();
+    }
+
+    /**
+     * @return - the driver's threads: its timer and the pool threads started so far (e.g. to account their CPU time).
+     */
+    public List<Thread> threads() {
+        return Collections.unmodifiableList(threads);
+    }
+
+    /**
+     * Starts a bot: its first decision is made as soon as possible.
+     *
+     * @param bot - the bot.
+     * @return - the bot's task (to wake it up).
+     */
+    public Task start(Bot bot) {
+        Task task = create(bot);
+        task.wake();
+        return task;
+    }
+
+    /**
+     * Creates a parked bot: its first decision is made when it is first woken up.
+     *
+     * @param bot - the bot.
+     * @return - the bot's task (to wake it up).
+     */
+    public Task create(Bot bot) {
+        return new Task(bot);
+    }
+
+    private void schedule(Task task) {
+        Task head;
+        do {
+            head = pending.get();
+            task.nextPending = head;
+        } while (!pending.compareAndSet(head, task));
+        if (timerParked) LockSupport.unpark(timer);
+    }
+
+    private void timerLoop() {
+        while (true) {
+            addPending();
+            long now = System.nanoTime();
+            long due = (now - startNanos) / tickNanos;
+            while (tick <= due) {
+                expire(tick & mask);
+                tick++;
+            }
+            // parked until the next tick a bot is due at (not every tick), or until a bot is scheduled
+            timerParked = true;
+            if (pending.get() == null) {
+                if (inWheel == 0) LockSupport.park(this);
+                else LockSupport.parkNanos(this, startNanos + nextDueTick() * tickNanos - System.nanoTime());
+            }
+            timerParked = false;
+            if (inWheel == 0) tick = (System.nanoTime() - startNanos) / tickNanos; // no bot missed the ticks skipped
+        }
+    }
+
+    /**
+     * @return - the first tick at which a bot in the wheel is due (the ticks up to it are expired on waking up).
+     */
+    private long nextDueTick() {
+        long next = Long.MAX_VALUE;
+        for (int offset = 0; offset < wheel.length; offset++)
+            for (Task task = wheel[(int) ((tick + offset) & mask)]; task != null; task = task.next)
+                next = Math.min(next, tick + offset + task.rounds * wheel.length);
+        return next;
+    }
+
+    private void addPending() {
+        Task task = pending.getAndSet(null);
+        while (task != null) {
+            Task next = task.nextPending;
+            task.nextPending = null;
+            long deadlineTick = Math.max(tick, (task.deadline - startNanos + tickNanos - 1) / tickNanos);
+            task.rounds = (deadlineTick - tick) / wheel.length;
+            int bucket = (int) (deadlineTick & mask);
+            task.previous = null;
+            task.next = wheel[bucket];
+            if (task.next != null) task.next.previous = task;
+            wheel[bucket] = task;
+            inWheel++;
+            task = next;
+        }
+    }
+
+    private void expire(long bucket) {
+        int index = (int) bucket;
+        Task task = wheel[index];
+        while (task != null) {
+            Task next = task.next;
+            if (task.rounds > 0) {
+                task.rounds--;
+            } else {
+                if (task.previous != null) task.previous.next = next;
+                else wheel[index] = next;
+                if (next != null) next.previous = task.previous;
+                task.previous = task.next = null;
+                inWheel--;
+                task.state.set(QUEUED);
+                pool.execute(task);
+            }
+            task = next;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package bguspl.set.ex;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of card ids stored as primitive ints (4 bytes a card instead of a boxed Integer each), for the dealer's deck
+ * which holds every card of the variant: tens of thousands of them in the large variants.
+ */
+final class CardList extends AbstractList<Integer> implements RandomAccess {
+
+    private int[] cards;
+    private int size;
+
+    /**
+     * @param count - the number of cards: the list starts with the cards 0 to count - 1, in order.
+     */
+    CardList(int count) {
+        cards = new int[Math.max(count, 1)];
+        for (int i = 0; i < count; i++)
+            cards[i] = i;
+        size = count;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getCard(index);
+    }
+
+    /**
+     * @return - the card at the index (without boxing it).
+     */
+    int getCard(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("index: " + index + " size: " + size);
+        return cards[index];
+    }
+
+    /**
+     * Removes the card at the index (without boxing it).
+     *
+     * @return - the card removed.
+     */
+    int removeCard(int index) {
+        int card = getCard(index);
+        System.arraycopy(cards, index + 1, cards, index, size - index - 1);
+        size--;
+        modCount++;
+        return card;
+    }
+
+    /**
+     * Adds a card at the end (without boxing it).
+     */
+    void addCard(int card) {
+        if (size == cards.length) cards = Arrays.copyOf(cards, size * 2);
+        cards[size++] = card;
+        modCount++;
+    }
+
+    /**
+     * @return - the index of the card, or -1 if it is not in the list.
+     */
+    int indexOfCard(int card) {
+        for (int i = 0; i < size; i++)
+            if (cards[i] == card) return i;
+        return -1;
+    }
+
+    /**
+     * @return - the array the cards are kept in (the first size() ones): valid until the list changes.
+     */
+    int[] array() {
+        return cards;
+    }
+
+    @Override
+    public Integer set(int index, Integer card) {
+        int old = getCard(index);
+        cards[index] = card;
+        return old;
+    }
+
+    @Override
+    public void add(int index, Integer card) {
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException("index: " + index + " size: " + size);
+        if (size == cards.length) cards = Arrays.copyOf(cards, size * 2);
+        System.arraycopy(cards, index, cards, index + 1, size - index);
+        cards[index] = card;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        return removeCard(index);
+    }
+
+    @Override
+    public int indexOf(Object card) {
+        return card instanceof Integer ? indexOfCard((Integer) card) : -1;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+}
@@ -0,0 +1,33 @@
+package bguspl.set.ex;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses the cards the dealer draws from the deck.
+ */
+public interface CardSource {
+
+    /**
+     * @param deck - the cards left in the deck (not empty).
+     * @param slot - the slot the card is drawn for.
+     * @return - the index (in deck) of the card to draw.
+     */
+    int draw(List<Integer> deck, int slot);
+
+    /**
+     * @return - a source that draws uniformly at random (a different game every time).
+     */
+    static CardSource random() {
+        return (deck, slot) -> ThreadLocalRandom.current().nextInt(deck.size());
+    }
+
+    /**
+     * @param random - the generator of the draws (used by the dealer thread only).
+     * @return - a source that draws at random from the given generator (the same draws for the same seed).
+     */
+    static CardSource seeded(SplittableRandom random) {
+        return (deck, slot) -> random.nextInt(deck.size());
+    }
+}
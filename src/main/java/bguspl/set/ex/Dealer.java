@@ -1,13 +1,20 @@
 package bguspl.set.ex;
 
+import bguspl.set.CardMap;
 import bguspl.set.Env;
+import bguspl.set.EventJournal;
+import bguspl.set.GameMetrics;
+import bguspl.set.GameStats;
+
+import javax.management.ObjectName;
 //import sun.jvm.hotspot.runtime.Threads;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * This class manages the dealer's threads and data
@@ -28,7 +35,7 @@ public class Dealer implements Runnable {
     /**
      * The list of card ids that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final CardList deck;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -42,13 +49,81 @@ public class Dealer implements Runnable {
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
+    /**
+     * Chooses the cards drawn from the deck.
+     */
+    private final CardSource cards;
+
+    /**
+     * The order in which the computer players take turns (used in the deterministic scheduling mode only).
+     */
+    private final TurnOrder turns;
+
+    /**
+     * The ids of the players whose claims are being checked, in order, and the verdict on each (reused).
+     */
+    private final int[] claims;
+    private final int[] verdicts;
+
+    /**
+     * The verdicts on a claim (as journaled): a set, not a set, or stale (a card it was made on was replaced).
+     */
+    private static final int SET = 1;
+    private static final int NOT_A_SET = 0;
+    private static final int STALE = -1;
+
+    /**
+     * The number of slots in play: the table size, and the extra slots opened when there was no set on the table.
+     */
+    private int slots;
+
+    /**
+     * The slots changed by a deal or a clear, and the cards dealt and their slots (reused).
+     */
+    private final int[] changedSlots;
+    private final int[] dealtCards;
+    private final int[] dealtSlots;
+
+    /**
+     * The cards on the table after a deal, the index in dealtCards of each one that was just dealt (-1 for the cards
+     * that stayed), and which cards are on the table (hashed) and in the deck (by card id), used to complete a set
+     * (reused).
+     */
+    private final int[] boardCards;
+    private final int[] dealtIndex;
+    private final CardMap onBoard;
+    private final boolean[] inDeck;
+    private final int[] pair = new int[2];
+
+    /**
+     * The cards of the claim being checked (reused).
+     */
+    private final int[] claimCards;
+
     public Dealer(Env env, Table table, Player[] players) {
+        this(env, table, players, CardSource.seeded(env.random.deck()));
+    }
+
+    public Dealer(Env env, Table table, Player[] players, CardSource cards) {
         this.env = env;
+        this.cards = cards;
+        turns = new TurnOrder(env.config.humanPlayers, env.config.computerPlayers);
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        deck = new CardList(env.config.deckSize);
         threads=new ArrayList<>();
         timer=env.config.turnTimeoutMillis;
+        claims = new int[env.config.players];
+        verdicts = new int[env.config.players];
+        slots = env.config.tableSize;
+        changedSlots = new int[env.config.maxTableSize];
+        dealtCards = new int[env.config.maxTableSize];
+        dealtSlots = new int[env.config.maxTableSize];
+        boardCards = new int[env.config.maxTableSize];
+        dealtIndex = new int[env.config.maxTableSize];
+        onBoard = new CardMap(env.config.maxTableSize);
+        inDeck = new boolean[env.config.deckSize];
+        claimCards = new int[env.config.featureSize];
     }
 
     /**
@@ -57,7 +132,11 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-        System.out.println(Level.INFO+ " Thread " + Thread.currentThread().getName() + " starting.");
+        env.metrics.dealerStarted();
+        env.metrics.setCardsRemaining(deck.size());
+        env.journal.record(EventJournal.Type.GAME_START, -1, -1, env.config.players);
+        ObjectName mbean = env.config.jmx ? GameStats.register(env.metrics, env.logger) : null;
+        table.setClaimConsumer(Thread.currentThread());
         for (Player player: players){
             Thread thread=new Thread(player);
             threads.add(thread);
@@ -66,6 +145,7 @@ public class Dealer implements Runnable {
             thread.start();
         }
         while (!shouldFinish()) {
+            env.metrics.dealerIterations.increment();
             if(!table.isNoTimerGameMode()) {
                 placeCardsOnTable();
                 timerLoop();
@@ -81,6 +161,12 @@ public class Dealer implements Runnable {
         }
         announceWinners();
         terminatePlayerThreadsGracefully();
+        env.metrics.dealerStopped();
+        env.journal.record(EventJournal.Type.GAME_END, -1, -1, winnersScore());
+        env.journal.flush();
+        env.metrics.logLatencies(env.logger);
+        GameStats.unregister(mbean, env.metrics);
+        env.metrics.threadFinished();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -89,6 +175,7 @@ public class Dealer implements Runnable {
      */
     private void timerLoop() {
         while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+            env.metrics.dealerIterations.increment();
             sleepUntilWokenOrTimeout();
             updateTimerDisplay(false);
             removeAllCardsFromTable();
@@ -96,6 +183,10 @@ public class Dealer implements Runnable {
         }
     }
 
+    TurnOrder turnOrder() {
+        return turns;
+    }
+
     /**
      * Called when the game should be terminated due to an external event.
      */
@@ -109,64 +200,224 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !env.util.hasSet(deck.array(), deck.size());
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
      */
     private void removeCardsFromTable() {
-        for (int i = 0; i <env.config.tableSize ; i++) {
-            if(table.slotToCard[i]==null){
-                env.ui.removeCard(i);
-                if(!deck.isEmpty()) {
-                    int cardIndex = getRandomCardFromDeck();
-                    table.placeCard(deck.get(cardIndex), i);
-                    env.ui.placeCard(deck.remove(cardIndex), i);
+        int empty = emptySlots();
+        env.ui.removeCards(changedSlots, empty);
+        if (slots > env.config.tableSize) compact();
+        deal(emptySlots());
+        expand();
+    }
+
+    /**
+     * Check if any cards can be removed from the deck and placed on the table.
+     */
+    void placeCardsOnTable() {
+        if (slots > env.config.tableSize) compact();
+        deal(emptySlots());
+        expand();
+        ReshuffleCurrentCards();
+        turns.open();
+    }
+
+    /**
+     * Opens extra slots (featureSize at a time, up to MaxExtraSlots) and deals into them, while there is no set on
+     * the table: the players get more cards instead of waiting for a reshuffle.
+     */
+    private void expand() {
+        while (slots < env.config.maxTableSize && !deck.isEmpty() && !table.isThereASetOnBoard()) {
+            int opened = 0;
+            for (int slot = slots; slot < Math.min(slots + env.config.featureSize, env.config.maxTableSize); slot++)
+                changedSlots[opened++] = slot;
+            slots += opened;
+            deal(opened);
+        }
+    }
+
+    /**
+     * Moves the cards of the extra slots down into the empty slots below them (taking the tokens off them), and
+     * closes the extra slots left empty: a set taken from an expanded table is not replaced, as in the real game.
+     */
+    private void compact() {
+        int moved = 0, from = slots - 1;
+        for (int to = 0; to < from; to++) {
+            if (table.slotToCard[to] != null) continue;
+            while (from > to && from >= env.config.tableSize && table.slotToCard[from] == null) from--;
+            if (from <= to || from < env.config.tableSize) break;
+            changedSlots[moved] = from;
+            dealtSlots[moved] = to;
+            dealtCards[moved++] = table.slotToCard[from--];
+        }
+        for (int i = 0; i < moved; i++)
+            for (int player = 0; player < env.config.players; player++)
+                if (table.snapshot().hasToken(player, changedSlots[i])) {
+                    table.removeToken(player, changedSlots[i]);
+                    players[player].updateTokensNum(false);
                 }
-            }
+        if (moved > 0) {
+            table.moveCards(dealtCards, changedSlots, dealtSlots, moved);
+            env.ui.moveCards(dealtCards, changedSlots, dealtSlots, moved);
         }
+        while (slots > env.config.tableSize && table.slotToCard[slots - 1] == null) slots--;
     }
 
     /**
-     * Check if any cards can be removed from the deck and placed on the table.
+     * Finds the empty slots.
+     *
+     * @return - the number of empty slots (listed in changedSlots).
      */
-    private void placeCardsOnTable() {
-        int index=0;
-        while (!deck.isEmpty()&&index<env.config.tableSize) {
-            if (table.slotToCard[index]==null) {
-                int cardIndex = getRandomCardFromDeck();
-                table.placeCard(deck.get(cardIndex),index);
-                env.ui.placeCard(deck.remove(cardIndex),index );
+    private int emptySlots() {
+        int empty = 0;
+        for (int i = 0; i < slots; i++)
+            if (table.slotToCard[i] == null)
+                changedSlots[empty++] = i;
+        return empty;
+    }
 
-            }
-            index++;
+    /**
+     * Deals cards from the deck into slots (while there are cards), all in one table update and one user interface
+     * call.
+     *
+     * @param count - the number of slots (listed in changedSlots).
+     */
+    private void deal(int count) {
+        int dealt = 0;
+        for (int i = 0; i < count && !deck.isEmpty(); i++) {
+            int slot = changedSlots[i];
+            dealtCards[dealt] = deck.removeCard(drawCardFromDeck(slot));
+            dealtSlots[dealt++] = slot;
         }
-        ReshuffleCurrentCards();
+        if (table.isNoTimerGameMode() && dealt > 0) completeASet(dealt);
+        table.placeCards(dealtCards, dealtSlots, dealt);
+        env.ui.placeCards(dealtCards, dealtSlots, dealt);
+        env.metrics.setCardsRemaining(deck.size());
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Makes sure the table has a set after a deal (in the modes with no timer, where there is no reshuffle to get
+     * the players out of a table with no set), in one pass: if there is no set with the cards dealt, the fewest
+     * possible dealt cards are swapped for cards of the deck that complete a set, found by looking up the card that
+     * completes each pair. Up to 3 dealt cards are swapped, so a deal costs O(table size^2 + deck size^2) lookups
+     * however sparse the deck is; a deal that already makes a set costs O(table size^2) (the deck is not looked at).
+     * If no swap makes a set, the deal is left as is (for ReshuffleCurrentCards).
+     *
+     * @param dealt - the number of cards dealt (in dealtCards and dealtSlots, not on the table yet).
      */
-    private void sleepUntilWokenOrTimeout() {
-        while (timer>0){
-            if(table.finished.get().isEmpty()==false){
-                    int curr = table.getPlayer();
-                    CheckCards(curr);
+    private void completeASet(int dealt) {
+        if (env.config.featureSize != 3) return; // the pair lookups are for sets of 3: left to the reshuffles
+        int n = 0;
+        for (int slot = 0; slot < slots; slot++)
+            if (table.slotToCard[slot] != null) {
+                dealtIndex[n] = -1;
+                boardCards[n++] = table.slotToCard[slot];
             }
-                timer = timer - 10;
-                if(timer<=env.config.turnTimeoutWarningMillis)
-                    env.ui.setCountdown(timer, true);
-                else
-                    env.ui.setCountdown(timer, false);
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    Thread.interrupted();
+        for (int i = 0; i < dealt; i++) {
+            dealtIndex[n] = i;
+            boardCards[n++] = dealtCards[i];
+        }
+        onBoard.clear();
+        for (int i = 0; i < n; i++) onBoard.put(boardCards[i], i);
+        for (int i = 0; i < n; i++) // a set already?
+            for (int j = i + 1; j < n; j++) {
+                int third = complete(boardCards[i], boardCards[j]);
+                if (onBoard.contains(third)) return;
+            }
+
+        Arrays.fill(inDeck, false);
+        for (int i = 0; i < deck.size(); i++) inDeck[deck.getCard(i)] = true;
+        for (int s = 0; s < n; s++) { // one dealt card swapped for the third card of a pair on the table
+            if (dealtIndex[s] < 0) continue;
+            for (int i = 0; i < n; i++)
+                for (int j = i + 1; j < n; j++) {
+                    if (i == s || j == s) continue;
+                    int third = complete(boardCards[i], boardCards[j]);
+                    if (third >= 0 && inDeck[third]) {
+                        swapDealt(s, third);
+                        return;
+                    }
+                }
+        }
+        int first = n - dealt, second = first + 1, third = first + 2; // the cards dealt come last
+        if (dealt >= 2) { // two dealt cards swapped for two cards of the deck that complete a card on the table
+            for (int i = 0; i < n; i++) {
+                if (i == first || i == second) continue;
+                for (int d = 0; d < deck.size(); d++) {
+                    int card = deck.getCard(d);
+                    int completion = complete(boardCards[i], card);
+                    if (completion >= 0 && completion != card && inDeck[completion]) {
+                        swapDealt(first, card);
+                        swapDealt(second, completion);
+                        return;
+                    }
+                }
+            }
+        }
+        if (dealt >= 3) { // three dealt cards swapped for a set of the deck
+            for (int a = 0; a < deck.size(); a++)
+                for (int b = a + 1; b < deck.size(); b++) {
+                    int cardA = deck.getCard(a), cardB = deck.getCard(b);
+                    int completion = complete(cardA, cardB);
+                    if (completion >= 0 && completion != cardA && completion != cardB && inDeck[completion]) {
+                        swapDealt(first, cardA);
+                        swapDealt(second, cardB);
+                        swapDealt(third, completion);
+                        return;
+                    }
                 }
         }
     }
 
+    /**
+     * @return - the card that completes a set with the two given cards, or -1 if there is none.
+     */
+    private int complete(int first, int second) {
+        pair[0] = first;
+        pair[1] = second;
+        int third = env.util.completeSet(pair);
+        return third < env.config.deckSize ? third : -1;
+    }
+
+    /**
+     * Puts a card of the deck in place of a card just dealt (which goes back to the deck).
+     *
+     * @param position - the position of the dealt card in boardCards.
+     * @param card     - the card of the deck.
+     */
+    private void swapDealt(int position, int card) {
+        int old = boardCards[position];
+        deck.removeCard(deck.indexOfCard(card));
+        deck.addCard(old);
+        inDeck[card] = false;
+        inDeck[old] = true;
+        onBoard.remove(old);
+        onBoard.put(card, position);
+        boardCards[position] = card;
+        dealtCards[dealtIndex[position]] = card;
+    }
+
+    /**
+     * Counts down the timer to its deadline, checking the claims as soon as they are made. Between claims the dealer
+     * wakes up only when the countdown shown changes: once a second, and every CountdownRefreshSeconds during the
+     * warning.
+     */
+    private void sleepUntilWokenOrTimeout() {
+        long deadline = System.currentTimeMillis() + timer;
+        while (timer>0 && !terminate){
+            env.metrics.dealerIterations.increment();
+            long warning = env.config.turnTimeoutWarningMillis;
+            long wait = timer <= warning ? env.config.countdownRefreshMillis
+                    : Math.min((timer - 1) % 1000 + 1, timer - warning); // the next whole second, or the warning
+            checkClaimsFor(Math.min(wait, timer));
+            timer = Math.max(0, deadline - System.currentTimeMillis());
+            env.ui.setCountdown(timer, timer <= warning);
+        }
+    }
+
     /**
      * Reset and/or update the countdown and the countdown display.
      */
@@ -178,24 +429,29 @@ public class Dealer implements Runnable {
     /**
      * Returns all the cards from the table to the deck.
      */
-    private void removeAllCardsFromTable() {
-        for (int i = 0; i < env.config.tableSize; i++) {
+    void removeAllCardsFromTable() {
+        turns.close();
+        env.metrics.reshuffles.increment();
+        env.journal.record(EventJournal.Type.RESHUFFLE, -1, -1, deck.size());
+        int cleared = 0;
+        for (int i = 0; i < slots; i++) {
             if(table.slotToCard[i]!=null) {
                 for (int j = 0; j <env.config.players ; j++) {
-                    if(table.slotsToPlayers.get()[i][j])
+                    if(table.snapshot().hasToken(j, i))
                     {
                         table.removeToken(j,i);
                         players[j].updateTokensNumToZero();
                     }
                 }
-                int i1 = table.slotToCard[i];
-                deck.add(i1);
-                table.cardToSlot[i1] = null;
-                table.slotToCard[i] = null;
-                env.ui.removeCard(i);
+                deck.addCard(table.slotToCard[i]);
+                changedSlots[cleared++] = i;
             }
         }
-        if(env.util.findSets(deck, 1).size() == 0)
+        table.clearSlots(changedSlots, cleared);
+        env.ui.removeCards(changedSlots, cleared);
+        slots = env.config.tableSize;
+        env.metrics.setCardsRemaining(deck.size());
+        if(!env.util.hasSet(deck.array(), deck.size()))
             terminate();
     }
 
@@ -214,25 +470,81 @@ public class Dealer implements Runnable {
      * @param playerId - id of player to penalize or give a score.
      * */
     public void CheckCards(int playerId){
+        table.captureClaim(playerId);
+        claims[0] = playerId;
+        checkClaims(1);
+    }
 
-        if(!isPlayersDeckASet(playerId)) {
-            players[playerId].penalty();
-        }
-        else {
-            List<Integer> playerDeck=table.getPlayersDeck(playerId);
-            for(int i:playerDeck){
-                int i1=table.cardToSlot[i];
-                table.slotToCard[i1]=null;
-                for(int i2=0;i2<env.config.players;i2++){
-                    if(table.slotsToPlayers.get()[i1][i2]) {
-                        table.removeToken(i2, i1);
-                        players[i2].updateTokensNum(false);
+    /**
+     * Takes all the pending claims and checks them as a batch.
+     *
+     * @return - the number of claims checked.
+     */
+    int checkClaims() {
+        int count = table.drainClaims(claims);
+        if (count > 0) checkClaims(count);
+        return count;
+    }
+
+    /**
+     * Checks the claims in the order they were made, each against the table as the claims before it left it: a claim
+     * on a set takes its cards (and every token on them) off the table. A claim whose cards changed since its tokens
+     * were placed (e.g. a later claim that shared a card with it) is stale: it is discarded without a penalty, and
+     * the player's tokens on the changed slots are removed. The taken cards are replaced once, after all the claims
+     * were checked, and only then the points and penalties are given.
+     *
+     * @param count - the number of claims (the first ones in claims).
+     */
+    private void checkClaims(int count) {
+        long checkNanos = System.nanoTime();
+        boolean taken = false;
+        for (int c = 0; c < count; c++) {
+            int playerId = claims[c];
+            long claimNanos = table.claimNanos(playerId);
+            env.metrics.claims.increment();
+            if (claimNanos != 0)
+                env.metrics.record(playerId, GameMetrics.Stage.CLAIM_QUEUE, checkNanos - claimNanos);
+
+            int verdict = !table.isClaimCurrent(playerId) ? STALE : isPlayersDeckASet(playerId) ? SET : NOT_A_SET;
+            env.journal.record(EventJournal.Type.VERDICT, playerId, -1, verdict);
+            verdicts[c] = verdict;
+            if (verdict == STALE) {
+                for (int removed = table.removeStaleTokens(playerId); removed > 0; removed--)
+                    players[playerId].updateTokensNum(false);
+            }
+            else if (verdict == SET) {
+                int claimed = table.getPlayersCards(playerId, claimCards);
+                for(int c1 = 0; c1 < claimed; c1++){
+                    int i1=table.cardToSlot[claimCards[c1]];
+                    table.clearSlot(i1);
+                    for(int i2=0;i2<env.config.players;i2++){
+                        if(table.snapshot().hasToken(i2, i1)) {
+                            table.removeToken(i2, i1);
+                            players[i2].updateTokensNum(false);
+                        }
                     }
                 }
+                taken = true;
             }
-            removeCardsFromTable();
-            players[playerId].updateTokensNumToZero();
-            players[playerId].point();
+        }
+        if (taken) removeCardsFromTable();
+        for (int c = 0; c < count; c++) {
+            int playerId = claims[c];
+            if (verdicts[c] == SET) {
+                players[playerId].updateTokensNumToZero();
+                players[playerId].point();
+                env.metrics.sets.increment();
+            }
+            else if (verdicts[c] == STALE) {
+                players[playerId].claimDiscarded();
+                env.metrics.staleClaims.increment();
+            }
+            else {
+                players[playerId].penalty();
+            }
+            env.metrics.recordSince(playerId, GameMetrics.Stage.VERIFY, checkNanos);
+            env.metrics.recordSince(playerId, GameMetrics.Stage.CLAIM_TO_VERDICT, table.claimNanos(playerId));
+            env.metrics.recordSince(playerId, GameMetrics.Stage.KEY_TO_VERDICT, players[playerId].claimKeyNanos());
         }
     }
 
@@ -242,8 +554,7 @@ public class Dealer implements Runnable {
      * @return true if the player currently has its tokens on a set
      * */
     public boolean isPlayersDeckASet(int playerId){
-        List<Integer> playerDeck=table.getPlayersDeck(playerId);
-        return env.util.findSets(playerDeck, 1).size() > 0;
+        return table.getPlayersCards(playerId, claimCards) == claimCards.length && env.util.testSet(claimCards);
     }
 
     public int winnersScore(){
@@ -276,14 +587,13 @@ public class Dealer implements Runnable {
         return winnersId;
     }
 
-    private int getRandomCardFromDeck(){
-        Random rand = new Random();
-        return rand.nextInt(deck.size());
+    private int drawCardFromDeck(int slot){
+        return cards.draw(deck, slot);
     }
 
     private void ReshuffleCurrentCards(){
         if (table.isNoTimerGameMode()){
-            while(!table.isThereASetOnBoard()){
+            while(!terminate && !table.isThereASetOnBoard()){ // only if the deal could not complete a set
                 removeAllCardsFromTable();
                 placeCardsOnTable();
             }
@@ -293,24 +603,41 @@ public class Dealer implements Runnable {
 
     private void WaitAndUpdateTimer(){
         final long Second = 1000;
-        try {
-            Thread.sleep(Second);
-            timer+=Second;
-            if (table.isElapsedTimeNeeded())
-                env.ui.setElapsed(timer);
-        }
-        catch (InterruptedException ex){
-            Thread.interrupted();
-        }
-        if(table.finished.get().isEmpty()==false) {
-            int curr = table.getPlayer();
-            CheckCards(curr);
+        int checked = checkClaimsFor(Second);
+        timer+=Second;
+        if (table.isElapsedTimeNeeded())
+            env.ui.setElapsed(timer);
+        if(checked > 0) {
             if (table.isElapsedTimeNeeded()){
                 timer = 0;
                 env.ui.setElapsed(timer);
             }
         }
     }
+
+    /**
+     * Waits on the dealer thread for a fixed amount of time, checking the claims as soon as they are made (the time
+     * parked is accounted as dealer idle time).
+     *
+     * @param millis - the time to wait (milliseconds).
+     * @return - the number of claims checked.
+     */
+    private int checkClaimsFor(long millis){
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        int checked = 0;
+        while (!terminate) {
+            checked += checkClaims();
+            long start = System.nanoTime();
+            long remaining = deadline - start;
+            if (remaining <= 0) break;
+            LockSupport.parkNanos(this, remaining); // unparked by Table.playerFinished
+            Thread.interrupted(); // nothing interrupts the dealer on purpose: don't let a stray interrupt spin the loop
+            env.metrics.dealerSleepNanos.add(System.nanoTime() - start);
+            env.metrics.dealerWakeups.increment();
+        }
+        return checked;
+    }
+
     /**
      * Terminates all player threads in reverse order to the one they were created by.
      * */
@@ -0,0 +1,262 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue of slot presses between any number of producers (the input threads: the EDT, the network
+ * server's selector thread or an AI) and a single consumer (the player thread).
+ * A producer reserves a position with a CAS on the tail and then writes the cell. Each cell holds the position it was
+ * written for together with its state, so the consumer tells a reserved cell that is not written yet from a written
+ * one, and the consumer and a producer applying the overflow policy claim a cell with a single CAS and never need a
+ * monitor.
+ *
+ * @inv 0 <= tail - head <= capacity
+ */
+public class MoveQueue {
+
+    /**
+     * What to do with a press when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the new press.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest pending press to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * If a press on the same slot is pending, the two presses cancel each other out (press + unpress).
+         * Otherwise the new press is discarded.
+         */
+        COALESCE;
+
+        /**
+         * Parses a policy from its configuration name (e.g. "DropOldest").
+         *
+         * @param name - the configuration name of the policy.
+         * @return - the matching policy, or DROP_NEWEST if the name is not recognized.
+         */
+        public static OverflowPolicy fromName(String name) {
+            String normalized = name.replace("_", "").trim();
+            for (OverflowPolicy policy : values())
+                if (policy.name().replace("_", "").equalsIgnoreCase(normalized))
+                    return policy;
+            return DROP_NEWEST;
+        }
+    }
+
+    /**
+     * Returned by poll when there is no pending press.
+     */
+    public static final int NONE = -1;
+
+    private static final int VALUE_BITS = 24;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    private static final int TAKEN = 0;
+    private static final int CANCELLED = 1;
+    private static final int VALUE_OFFSET = 2;
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    /**
+     * cell = position << VALUE_BITS | state, where state is TAKEN, CANCELLED or slot + VALUE_OFFSET.
+     */
+    private final AtomicLongArray cells;
+
+    /**
+     * The System.nanoTime at which the press in each cell was offered.
+     */
+    private final AtomicLongArray stamps;
+
+    /**
+     * The position of the oldest pending press (advanced by the consumer, or by a producer when dropping).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The position of the next press to write (advanced by the producers, each reserving the position it writes).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Thread consumer;
+
+    /**
+     * The offer timestamp of the press last returned by poll (consumer side only).
+     */
+    private long lastPolledNanos;
+
+    public MoveQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+        cells = new AtomicLongArray(capacity);
+        stamps = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            cells.set(i, pack(i - capacity, TAKEN));
+    }
+
+    private static long pack(long position, int state) {
+        return position << VALUE_BITS | state;
+    }
+
+    private static long positionOf(long cell) {
+        return cell >> VALUE_BITS;
+    }
+
+    private static int stateOf(long cell) {
+        return (int) (cell & VALUE_MASK);
+    }
+
+    private int index(long position) {
+        return (int) (position % capacity);
+    }
+
+    /**
+     * Registers the thread that consumes presses, so producers can wake it up.
+     *
+     * @param thread - the consumer thread.
+     */
+    public void setConsumer(Thread thread) {
+        consumer = thread;
+    }
+
+    /**
+     * Adds a press to the queue, applying the overflow policy if it is full. Never blocks.
+     * Producer side (any thread).
+     *
+     * @param slot - the slot that was pressed.
+     * @return - true iff the press was queued (or coalesced with a pending press on the same slot).
+     */
+    public boolean offer(int slot) {
+        for (;;) {
+            long t = tail.get();
+            long h = head.get();
+            if (t - h < capacity) {
+                if (!tail.compareAndSet(t, t + 1)) continue; // another producer took the position
+                publish(t, slot);
+                return true;
+            }
+            switch (policy) {
+                case DROP_OLDEST:
+                    long cell = cells.get(index(h));
+                    if (positionOf(cell) != h) break; // reserved by another producer but not written yet: retry
+                    if (stateOf(cell) != TAKEN && cells.compareAndSet(index(h), cell, pack(h, TAKEN)))
+                        dropped.incrementAndGet();
+                    head.compareAndSet(h, h + 1);
+                    break; // retry with the freed cell
+                case COALESCE:
+                    for (long p = t - 1; p >= h; p--) {
+                        long pending = pack(p, slot + VALUE_OFFSET);
+                        if (cells.compareAndSet(index(p), pending, pack(p, CANCELLED)))
+                            return true;
+                    }
+                    dropped.incrementAndGet();
+                    return false;
+                default:
+                    dropped.incrementAndGet();
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Adds a press to the queue only if there is room for it, regardless of the overflow policy.
+     * Producer side (any thread).
+     *
+     * @param slot - the slot that was pressed.
+     * @return - true iff the press was queued.
+     */
+    public boolean tryOffer(int slot) {
+        for (;;) {
+            long t = tail.get();
+            if (t - head.get() >= capacity) return false;
+            if (tail.compareAndSet(t, t + 1)) {
+                publish(t, slot);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Writes a press at a position the calling producer reserved, and wakes up the consumer.
+     */
+    private void publish(long t, int slot) {
+        stamps.set(index(t), System.nanoTime());
+        cells.set(index(t), pack(t, slot + VALUE_OFFSET));
+        Thread c = consumer;
+        if (c != null) LockSupport.unpark(c);
+    }
+
+    /**
+     * Takes the oldest pending press. Consumer side only.
+     *
+     * @return - the slot that was pressed, or NONE if the queue is empty.
+     */
+    public int poll() {
+        for (;;) {
+            long h = head.get();
+            if (h >= tail.get()) return NONE;
+            int i = index(h);
+            long cell = cells.get(i);
+            if (positionOf(cell) < h) return NONE; // reserved but not written yet: its producer wakes us up after
+            if (positionOf(cell) != h) continue; // head moved under us
+            int state = stateOf(cell);
+            if (state == TAKEN) {
+                head.compareAndSet(h, h + 1);
+                continue;
+            }
+            long stamp = stamps.get(i); // read before claiming the cell: it may be reused right after
+            if (cells.compareAndSet(i, cell, pack(h, TAKEN))) {
+                head.compareAndSet(h, h + 1);
+                if (state == CANCELLED) continue;
+                lastPolledNanos = stamp;
+                return state - VALUE_OFFSET;
+            }
+        }
+    }
+
+    /**
+     * @return - the System.nanoTime at which the press last returned by poll was offered. Consumer side only.
+     */
+    public long lastPolledNanos() {
+        return lastPolledNanos;
+    }
+
+    /**
+     * Discards all pending presses. Consumer side only.
+     *
+     * @return - the number of presses discarded.
+     */
+    public int clear() {
+        int cleared = 0;
+        while (poll() != NONE) cleared++;
+        return cleared;
+    }
+
+    /**
+     * @return - the number of pending presses (including presses cancelled by coalescing).
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return - the number of presses discarded by the overflow policy so far.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+}
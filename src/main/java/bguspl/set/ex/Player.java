@@ -1,12 +1,14 @@
 package bguspl.set.ex;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
+import bguspl.set.EventJournal;
+import bguspl.set.GameMetrics;
 
 /**
  * This class manages the players' threads and data
@@ -25,6 +27,7 @@ public class Player implements Runnable {
      * Game entities.
      */
     private final Table table;
+    private final Dealer dealer;
 
     /**
      * The id of the player (starting from 0).
@@ -37,9 +40,9 @@ public class Player implements Runnable {
     private Thread playerThread;
 
     /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
+     * The AI (computer) player, run by the shared bot driver to generate key presses.
      */
-    private Thread aiThread;
+    private volatile BotDriver.Task bot;
 
     /**
      * True iff the player is human (not a computer player).
@@ -57,9 +60,26 @@ public class Player implements Runnable {
     private int score;
     private volatile AtomicInteger tokensOnBoardCount;
     private int keyPressed;
-    private Queue<Integer> moves;
-    private boolean isPunished;
-    private boolean isScore;
+
+    /**
+     * The pending slot presses (filled by the input thread, consumed by the player thread).
+     */
+    private final MoveQueue moves;
+    private volatile boolean isPunished;
+    private volatile boolean isScore;
+
+    /**
+     * The System.nanoTime of the key press that completed the player's last claim.
+     */
+    private volatile long claimKeyNanos;
+
+    /**
+     * The number of presses the player thread has handled, and true while a claim awaits the dealer's verdict
+     * (used by the computer player in the deterministic scheduling mode).
+     */
+    private volatile long movesHandled;
+    private volatile boolean claimPending;
+
     /**
      * The class constructor.
      *
@@ -72,9 +92,10 @@ public class Player implements Runnable {
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
         this.env = env;
         this.table = table;
+        this.dealer = dealer;
         this.id = id;
         this.human = human;
-        moves=new ArrayDeque<>(3);
+        moves = new MoveQueue(env.config.featureSize, MoveQueue.OverflowPolicy.fromName(env.config.inputOverflowPolicy));
         tokensOnBoardCount=new AtomicInteger();
         tokensOnBoardCount.set(0);
         isFinished=false;
@@ -86,156 +107,135 @@ public class Player implements Runnable {
     @Override
     public void run() {
         playerThread = Thread.currentThread();
+        moves.setConsumer(playerThread);
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + "starting.");
-        System.out.println(Level.INFO+ "Thread " + Thread.currentThread().getName() + "starting.");
         try{
             Thread.sleep(25);
         }
         catch (InterruptedException ex){
             Thread.interrupted();
         }
-        if (!human)
-            createArtificialIntelligence();
+        if (!human) {
+            if (isSmart()) createSmartBot();
+            else createArtificialIntelligence();
+        }
         while (!terminate) {
             boolean isPlaceNew=false;
             checkForPenaltyOrScore();
-            synchronized (moves) {
-                while (moves.isEmpty()) {
-                    try {
-                        // System.out.println("player" + id +" waits at player");
-                        moves.wait();
-                        // System.out.println("player" + id +" runs again at player");
-                    } catch (InterruptedException e) {
-                        terminate();
-                    }
-                }
-                /*try {
-                    Thread.sleep(15);
-                } catch (InterruptedException e) {
-                    Thread.interrupted();
-                }*/
-                int curr = moves.poll();
-                if(table.slotToCard[curr]!=null&&table.slotsToPlayers.get()[curr][id]==false) {
-                    if(tokensOnBoardCount.get()<3) {
-                        table.placeToken(id, curr);
-                        updateTokensNum(true);
-                       isPlaceNew=true;
-                    }
-                }
-                else{
-                    table.removeToken(id,curr);
-                    updateTokensNum(false);
+            int curr = moves.poll();
+            if (curr == MoveQueue.NONE) {
+                // woken up by a key press, a point/penalty or termination
+                LockSupport.park(moves);
+                continue;
+            }
+            long pollNanos = System.nanoTime();
+            // journaled when taken (not when offered), so presses discarded by a freeze are not replayed
+            env.journal.record(EventJournal.Type.KEY_PRESS, id, curr, 0);
+            env.metrics.record(id, GameMetrics.Stage.INPUT_QUEUE, pollNanos - moves.lastPolledNanos());
+            BoardSnapshot board = table.snapshot();
+            if(board.card(curr)>=0&&!board.hasToken(id, curr)) {
+                // the dealer may take the card meanwhile: count the token only if it was placed
+                if(tokensOnBoardCount.get()<env.config.featureSize && table.placeToken(id, curr)) {
+                    updateTokensNum(true);
+                   isPlaceNew=true;
+                   env.metrics.recordSince(id, GameMetrics.Stage.TOKEN, pollNanos);
                 }
-                if (tokensOnBoardCount.get() >= 3&&isPlaceNew) {
-                    table.playerFinished(id);
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException e) {
-                        terminate();
-                    }
-                    isPlaceNew=false;
+            }
+            else if(board.hasToken(id, curr)) { // not on an empty slot: there is no token to remove
+                table.removeToken(id,curr);
+                updateTokensNum(false);
+            }
+            boolean claimed = tokensOnBoardCount.get() >= env.config.featureSize && isPlaceNew;
+            if (claimed) {
+                claimKeyNanos = moves.lastPolledNanos();
+                claimPending = true;
+                table.playerFinished(id);
+            }
+            movesHandled++; // the player thread is the only writer
+            wakeBot();
+            if (claimed) {
+                // wait for the verdict (the dealer checks the claim as soon as it is made)
+                long waitNanos = System.nanoTime();
+                while (claimPending && !terminate) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) terminate();
                 }
-                moves.notifyAll();
+                env.metrics.recordSince(id, GameMetrics.Stage.VERDICT_WAIT, waitNanos);
+                isPlaceNew=false;
             }
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        env.metrics.threadFinished();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Starts an AI (computer) player on the shared bot driver. The AI repeatedly generates random key presses, one
+     * per millisecond; if the queue of key presses is full, it waits (parked) until the player thread takes a press.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-            while (!terminate) {
-                synchronized (moves) {
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        Thread.interrupted();
-                    }
-                    Random random = new Random();
-                    keyPressed = random.nextInt(env.config.rows*env.config.columns);
-                    while (moves.size() == 3) {
-                        try {
-                            moves.wait();
-                        } catch (InterruptedException e) {
-                            Thread.interrupted();
-                        }
-                    }
-                    moves.add(keyPressed);
-                    moves.notifyAll();
-                }
+        TurnOrder turns = env.config.deterministicScheduling ? dealer.turnOrder() : null;
+        BotDriver.Task task = create(new RandomBot(env.random.player(id), turns));
+        if (turns != null) turns.register(id, task);
+        task.wake();
+    }
 
-            }
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
-        try {
-            Thread.sleep(1);
-        } catch (InterruptedException e) {
-            terminate();
+    private class RandomBot implements BotDriver.Bot {
+
+        private final long pressDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private final SplittableRandom random;
+        private final TurnOrder turns;
+        private long offered;
+        private boolean inTurn;
+
+        RandomBot(SplittableRandom random, TurnOrder turns) {
+            this.random = random;
+            this.turns = turns;
         }
-    }
-    /**
-     * Creates a smart and fast ai - for testing
-     *
-     * Currently, might enter .wait() at player while waiting at AI and stops playing
-     * */
-    private void createActuallySmartAI(){
-        aiThread = new Thread(() -> {
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-            boolean repress = false;
-            while (!terminate) {
-                synchronized (moves) {
-                    try {
-                        Thread.sleep(400);
-                    } catch (InterruptedException e) {
-                        Thread.interrupted();
-                    }
-                    Queue<Integer> toPress = new ArrayDeque<>(3);
-                    while (moves.size() == 3) {
-                        int currScore = getScore();
-                        try {
-                            System.out.println("player" + id +" waits at AI");
-                            moves.wait();
-                            System.out.println("player" + id +" runs again at AI");
-                        } catch (InterruptedException e) {
-                            Thread.interrupted();
-                        }
-                        if(currScore==getScore()){
-                            repress = true;
-                        }
-                    }
-                    toPress = SmartAiMoves(repress, toPress);
-                    while (toPress.isEmpty())
-                        toPress = SmartAiMoves(!repress, toPress);
-                    while(!toPress.isEmpty()){
-                        keyPressed = toPress.poll();
-                        moves.add(keyPressed);
-                        moves.notifyAll();
-                        try{
-                            Thread.sleep(10);
-                        }
-                        catch (InterruptedException ex){
-                            Thread.interrupted();
-                        }
-
-                    }
+
+        @Override
+        public long decide(long nowNanos) {
+            if (terminate) return BotDriver.DONE;
+            if (turns != null) {
+                if (inTurn) {
+                    // wait for the press to be handled, for the verdict on a claim it made and for the freeze after it
+                    if (movesHandled < offered || isBusy()) return BotDriver.PARK;
+                    inTurn = false;
+                    turns.next(id);
                 }
+                if (!turns.isTurn(id)) return BotDriver.PARK;
             }
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "Smartypants-" + id);
-        aiThread.start();
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-            terminate();
+            keyPressed = random.nextInt(env.config.maxTableSize);
+            if (!moves.tryOffer(keyPressed)) return BotDriver.PARK; // woken up when the player thread takes a press
+            if (turns == null) return pressDelayNanos;
+            offered++;
+            inTurn = true;
+            return BotDriver.PARK;
         }
+    }
+
+    private BotDriver.Task create(BotDriver.Bot ai) {
+        BotDriver.Task task = BotDriver.shared().create(ai);
+        bot = task;
+        return task;
+    }
+
+    private void wakeBot() {
+        BotDriver.Task task = bot;
+        if (task != null) task.wake();
+    }
+
+    private boolean isSmart() {
+        return "Smart".equalsIgnoreCase(env.config.computerPlayerStrategy[id]);
+    }
 
+    /**
+     * Starts a smart computer player, which looks for sets on the table (see SmartBot).
+     */
+    private void createSmartBot() {
+        SmartBot smart = new SmartBot(env, table, this);
+        smart.attach(create(smart));
+        bot.wake();
     }
 
     /**
@@ -243,6 +243,12 @@ public class Player implements Runnable {
      */
     public void terminate() {
        terminate=true;
+       wakeUp(playerThread);
+       wakeBot();
+    }
+
+    private static void wakeUp(Thread thread) {
+        if (thread != null) LockSupport.unpark(thread);
     }
 
     /**
@@ -251,17 +257,10 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-       if (moves.size() < 3 && !isPunished && !isScore){
-            if(human) {
-                while (moves.size() == 3) {
-                }
-                keyPressed = slot;
-                synchronized (moves) {
-                    moves.add(keyPressed);
-                    moves.notifyAll();
-                }
-            }  
-        }
+        // never blocks the caller (the EDT, or the network server's thread for a remote player: both may press for the
+        // same player at once): a full queue is handled by the overflow policy
+        if (human && !isPunished && !isScore)
+            moves.offer(slot);
     }
 
     /**
@@ -273,90 +272,81 @@ public class Player implements Runnable {
     public void point() {
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
+        env.journal.record(EventJournal.Type.SCORE, id, -1, score);
         isScore=true;
+        claimPending = false;
+        wakeUp(playerThread);
+        wakeBot();
     }
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
+        env.metrics.addPenalty(id);
         isPunished=true;
+        claimPending = false;
+        wakeUp(playerThread);
+        wakeBot();
+    }
+
+    /**
+     * Releases the player from a claim the dealer discarded (its cards were replaced before it was checked), with
+     * no point and no penalty.
+     */
+    public void claimDiscarded() {
+        claimPending = false;
+        wakeUp(playerThread);
+        wakeBot();
     }
 
     public boolean getIsScore(){
         return isScore;
     }
 
-    public Queue<Integer> getMoves(){
+    public MoveQueue getMoves(){
         return moves;
     }
 
     public boolean getIsPunished(){
         return isPunished;
     }
-    public int getId(){
-        return id;
-    }
-
-    public int getScore() {
-        return score;
+    /**
+     * @return - the System.nanoTime of the key press that completed the player's last claim (0 if none).
+     */
+    public long claimKeyNanos(){
+        return claimKeyNanos;
     }
 
-    public synchronized void thirdToken(){
-        isFinished=true;
+    /**
+     * @return - the number of presses the player thread has handled (or discarded).
+     */
+    long movesHandled(){
+        return movesHandled;
     }
 
     /**
-     * Used in the AI to remove tokens when needed.
-     * @return queue of all pressed inputs that currently have tokens on them
-     * */
-    private Queue<Integer> getAllPressed(){
-        Queue<Integer> toRePress = new ArrayDeque<>(3);
-        for (int i = 0; i<env.config.tableSize; i++){
-            if (table.slotsToPlayers.get()[i][id]==true){
-                toRePress.add(i);
-            }
-        }
-        while (toRePress.isEmpty()){
-            toRePress = table.getSetOnBoardSlots();
-        }
-        return toRePress;
+     * @return - true while a claim of the player awaits a verdict or the player is (about to be) frozen.
+     */
+    boolean isBusy(){
+        return claimPending || isPunished || isScore;
     }
 
+    boolean isTerminated(){
+        return terminate;
+    }
 
-    private Queue <Integer> SmartAiMoves(boolean repress,Queue <Integer> currentPressQueue){
-        while (currentPressQueue.peek() == null || currentPressQueue.isEmpty()){
-
-            try{
-                Thread.sleep(400);
-            }
-            catch (InterruptedException ex){
-                Thread.interrupted();
-            }
-            if (tokensOnBoardCount.get() > 0){
-                repress = true;
-            }
-            if (!repress){
-                while(!table.isThereASetOnBoard()){
-                    try{
-                        Thread.sleep(1000);
-                        System.out.println("Ai" + Thread.currentThread().getName() +" found no sets on board");
-                    }
-                    catch (InterruptedException ex){
-                        Thread.interrupted();
-                    }
+    public int getId(){
+        return id;
+    }
 
-                }
-                currentPressQueue =  table.getSetOnBoardSlots();
-            }
-            else{
-                currentPressQueue = getAllPressed();
-            }
-        }
-        System.out.println("current queue for AI" + Thread.currentThread().getName() + " is "+ currentPressQueue);
-        return currentPressQueue;
+    public int getScore() {
+        return score;
     }
 
+    public synchronized void thirdToken(){
+        isFinished=true;
+    }
 
     public void updateTokensNum(boolean incDec){
         int old;
@@ -392,10 +382,12 @@ public class Player implements Runnable {
         {
             freezePlayer(env.config.penaltyFreezeMillis);
             isPunished = false;
+            wakeBot();
         }
         else if(isScore){
             freezePlayer(env.config.pointFreezeMillis);
             isScore = false;
+            wakeBot();
         }
     }
     public int getNumOfOnBoardTokens(){
@@ -410,22 +402,22 @@ public class Player implements Runnable {
      *
      * */
     private void freezePlayer(long freezeTime){
-        final long mlSecond = 1;
+        long freezeStart = System.nanoTime();
+        env.journal.record(EventJournal.Type.FREEZE, id, -1, (int) freezeTime);
+        long deadline = System.currentTimeMillis() + freezeTime;
         env.ui.setFreeze(id,freezeTime);
         while(freezeTime > 0){
             try{
-                env.ui.setFreeze(id,freezeTime);
-                Thread.sleep(mlSecond);
-                freezeTime-=mlSecond;
+                Thread.sleep((freezeTime - 1) % 1000 + 1); // until the second shown changes
             }
             catch(InterruptedException ex){
                 Thread.interrupted();
             }
+            freezeTime = Math.max(0, deadline - System.currentTimeMillis());
+            if (freezeTime > 0) env.ui.setFreeze(id,freezeTime);
         }
+        movesHandled += moves.clear();
         env.ui.setFreeze(id, 0);
-        synchronized (moves){
-            moves.clear();
-            moves.notifyAll();
-        }
+        env.metrics.addFreeze(id, System.nanoTime() - freezeStart);
     }
 }
@@ -0,0 +1,265 @@
+package bguspl.set.ex;
+
+import bguspl.set.CardMap;
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A computer player that plays like a person: it is notified of the table changes (instead of polling the table),
+ * keeps track of the sets on the table as cards come and go, and presses the keys of a set after a reaction time.
+ * With probability 1 - skill it goes for random cards instead. Its presses go through the player's key press queue,
+ * like a human's, and it is run by the bot driver only when there is something to do.
+ */
+class SmartBot implements BotDriver.Bot, TableListener {
+
+    private final Env env;
+    private final Table table;
+    private final Player player;
+    private final SplittableRandom random;
+
+    /**
+     * The number of cards in a set.
+     */
+    private final int setSize;
+
+    /**
+     * The card in each slot and the slot of each card, as the bot last saw them (-1 if none).
+     */
+    private final int[] board;
+    private final CardMap slotOf;
+
+    /**
+     * The sets (card ids) among the cards the bot saw, setSize cards each, in the order they were found (grown when
+     * full, so the bot stops allocating once it has seen its busiest table).
+     */
+    private int[] sets;
+    private int setCount;
+
+    /**
+     * The slots the bot goes for and the cards that were in them when it chose them (targetSize == 0 if none).
+     */
+    private final int[] target;
+    private final int[] targetCards;
+    private int targetSize;
+
+    /**
+     * True iff the bot's last press completed its target (so a claim was made on it), and true iff the press
+     * nextPress returned would.
+     */
+    private boolean completed;
+    private boolean completes;
+
+    private final int[] given;
+    private volatile boolean changed = true;
+    private BotDriver.Task task;
+    private long offered;
+    private long pressAt;
+
+    SmartBot(Env env, Table table, Player player) {
+        this.env = env;
+        this.table = table;
+        this.player = player;
+        random = env.random.player(player.id);
+        setSize = env.config.featureSize;
+        board = new int[env.config.maxTableSize];
+        slotOf = new CardMap(env.config.maxTableSize);
+        Arrays.fill(board, -1);
+        target = new int[setSize];
+        targetCards = new int[setSize];
+        given = new int[setSize];
+        sets = new int[setSize * 16];
+    }
+
+    /**
+     * Sets the task the bot runs as and starts listening to the table.
+     *
+     * @param task - the bot's task on the bot driver.
+     */
+    void attach(BotDriver.Task task) {
+        this.task = task;
+        table.addListener(this);
+    }
+
+    @Override
+    public void slotChanged(int slot) {
+        changed = true;
+        task.wake();
+    }
+
+    @Override
+    public long decide(long nowNanos) {
+        if (player.isTerminated()) {
+            table.removeListener(this);
+            return BotDriver.DONE;
+        }
+        if (changed) {
+            changed = false;
+            syncBoard();
+        }
+        // one press at a time, and none while a claim awaits its verdict or the player is frozen
+        if (player.movesHandled() < offered || player.isBusy()) return BotDriver.PARK;
+        int slot = nextPress();
+        if (slot < 0) { // nothing to go for until the table changes
+            pressAt = 0;
+            return BotDriver.PARK;
+        }
+        if (pressAt == 0) pressAt = nowNanos + reactionNanos();
+        if (nowNanos - pressAt < 0) return pressAt - nowNanos;
+        pressAt = 0;
+        if (player.getMoves().tryOffer(slot)) {
+            offered++;
+            completed = completes;
+        }
+        return BotDriver.PARK; // woken up when the player thread handles (or takes) the press
+    }
+
+    /**
+     * @return - a reaction time drawn from a normal distribution (BotReactionSeconds, BotReactionDeviationSeconds).
+     */
+    private long reactionNanos() {
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        double millis = env.config.botReactionMillis + env.config.botReactionDeviationMillis * gaussian;
+        return TimeUnit.MICROSECONDS.toNanos((long) (Math.max(0, millis) * 1000));
+    }
+
+    /**
+     * @return - the slot to press next (to take a token off a card that is not in the target, or to put one on a
+     * target card), or -1 if there is no target.
+     */
+    private int nextPress() {
+        if (targetSize > 0 && !isTargetOnTable()) targetSize = 0;
+        if (targetSize > 0 && completed) { // the claim on the target was decided
+            targetSize = 0;
+            completed = false;
+        }
+        if (targetSize == 0 && !chooseTarget()) return -1;
+
+        BoardSnapshot tokens = table.snapshot();
+        completes = false;
+        for (int slot = 0; slot < board.length; slot++)
+            if (tokens.hasToken(player.id, slot) && !isTarget(slot)) return slot;
+        int missing = -1, count = 0;
+        for (int i = 0; i < targetSize; i++)
+            if (!tokens.hasToken(player.id, target[i])) {
+                if (missing < 0) missing = target[i];
+                count++;
+            }
+        completes = count == 1;
+        return missing >= 0 ? missing : target[0]; // all on already, but not claimed: take one off to claim again
+    }
+
+    private boolean isTarget(int slot) {
+        for (int i = 0; i < targetSize; i++)
+            if (target[i] == slot) return true;
+        return false;
+    }
+
+    private boolean isTargetOnTable() {
+        for (int i = 0; i < targetSize; i++)
+            if (board[target[i]] != targetCards[i]) return false;
+        return true;
+    }
+
+    /**
+     * Picks a set on the table (with probability skill) or random cards.
+     *
+     * @return - false if there is no set on the table.
+     */
+    private boolean chooseTarget() {
+        if (setCount == 0) return false;
+        completed = false;
+        if (random.nextDouble() < env.config.botSkill[player.id]) {
+            int set = random.nextInt(setCount) * setSize;
+            for (int i = 0; i < setSize; i++) {
+                target[i] = slotOf.get(sets[set + i]);
+                targetCards[i] = sets[set + i];
+            }
+            targetSize = setSize;
+            return true;
+        }
+        targetSize = 0;
+        while (targetSize < setSize) {
+            int slot = random.nextInt(board.length);
+            if (board[slot] >= 0 && !isTarget(slot)) {
+                targetCards[targetSize] = board[slot];
+                target[targetSize++] = slot;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Brings the bot's view of the table up to date: forgets the sets of the cards that left and finds the sets of
+     * the cards that came (every new set includes a new card and is found when its last card is added).
+     */
+    private void syncBoard() {
+        BoardSnapshot snapshot = table.snapshot(); // one consistent board for the whole sync
+        for (int slot = 0; slot < board.length; slot++) {
+            int card = snapshot.card(slot);
+            int current = board[slot];
+            if (current >= 0 && card != current) {
+                slotOf.remove(current);
+                board[slot] = -1;
+                removeSets(current);
+            }
+        }
+        for (int slot = 0; slot < board.length; slot++) {
+            int card = snapshot.card(slot);
+            if (card >= 0 && board[slot] < 0) {
+                board[slot] = card;
+                slotOf.put(card, slot);
+                given[0] = card;
+                findSets(1, 0);
+            }
+        }
+    }
+
+    /**
+     * Chooses the other given cards (by increasing slot) and completes them to a set.
+     *
+     * @param depth    - the number of given cards chosen so far.
+     * @param fromSlot - the first slot to choose the next card from.
+     */
+    private void findSets(int depth, int fromSlot) {
+        if (depth == setSize - 1) {
+            int completion = env.util.completeSet(given);
+            int lastSlot = depth > 1 ? slotOf.get(given[depth - 1]) : -1;
+            if (completion >= 0 && completion < env.config.deckSize && slotOf.get(completion) > lastSlot
+                    && completion != given[0]) {
+                if ((setCount + 1) * setSize > sets.length) sets = Arrays.copyOf(sets, sets.length * 2);
+                System.arraycopy(given, 0, sets, setCount * setSize, setSize - 1);
+                sets[++setCount * setSize - 1] = completion;
+            }
+            return;
+        }
+        for (int slot = fromSlot; slot < board.length; slot++) {
+            int card = board[slot];
+            if (card >= 0 && card != given[0]) {
+                given[depth] = card;
+                findSets(depth + 1, slot + 1);
+            }
+        }
+    }
+
+    /**
+     * Forgets the sets that include the card (keeping the order of the others).
+     */
+    private void removeSets(int card) {
+        int kept = 0;
+        for (int set = 0; set < setCount; set++) {
+            if (contains(set, card)) continue;
+            if (kept != set) System.arraycopy(sets, set * setSize, sets, kept * setSize, setSize);
+            kept++;
+        }
+        setCount = kept;
+    }
+
+    private boolean contains(int set, int card) {
+        for (int i = set * setSize; i < (set + 1) * setSize; i++)
+            if (sets[i] == card) return true;
+        return false;
+    }
+}
@@ -1,11 +1,15 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.EventJournal;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 /**
@@ -29,8 +33,54 @@ public class Table {
      * Mapping between a card and the slot it is in (null if none).
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
-    protected AtomicReference<Boolean[][]> slotsToPlayers;
-    protected AtomicReference<Deque<Integer>> finished;
+
+    /**
+     * The System.nanoTime of each player's last claim (0 if none).
+     */
+    private final AtomicLongArray claimNanos;
+
+    /**
+     * The System.nanoTime of each player's claim that the dealer did not take yet (0 if none), and their number.
+     * A player makes one claim at a time (it waits for the verdict), so this is the whole claim queue.
+     */
+    private final AtomicLongArray pendingClaims;
+    private final AtomicInteger pendingClaimCount = new AtomicInteger();
+    private final long[] drainedNanos; // the times of the claims being drained (by the claim consumer only)
+
+    /**
+     * The thread that takes the claims (the dealer), woken up when a claim is made.
+     */
+    private volatile Thread claimConsumer;
+
+    /**
+     * The board as the readers see it, replaced as a whole on every change (see BoardSnapshot).
+     */
+    private final AtomicReference<BoardSnapshot> board;
+
+    /**
+     * A buffer for the cards on the board, per thread (for the set searches that read the whole board).
+     */
+    private final ThreadLocal<int[]> boardCards;
+
+    /**
+     * The version of each slot when each player's token was placed on it, by slot and player (a token placed while
+     * the dealer was replacing the card is stamped with the old version, so a claim on it is stale).
+     */
+    private final AtomicIntegerArray tokenVersions;
+
+    /**
+     * The slots of each player's pending claim and their versions when their tokens were placed (written by the
+     * player before the claim is made, read by the dealer after it is taken).
+     */
+    private final int[][] claimSlots;
+    private final int[][] claimVersions;
+    private final int[] claimSize;
+
+    /**
+     * The listeners notified of card changes (replaced as a whole, so notifying needs no lock).
+     */
+    private volatile TableListener[] listeners = new TableListener[0];
+
     /**
      * Constructor for testing.
      *
@@ -43,16 +93,15 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        slotsToPlayers=new AtomicReference<>();
-        Boolean[][] x=new Boolean[env.config.tableSize][env.config.players];
-        for(int i=0;i< x.length;i++){
-           for(int j=0;j<env.config.players;j++){
-               x[i][j]=new Boolean(false);
-           }
-        }
-        slotsToPlayers.set(x);
-        finished=new AtomicReference<>();
-        finished.set(new ArrayDeque<>());
+        claimNanos = new AtomicLongArray(env.config.players);
+        pendingClaims = new AtomicLongArray(env.config.players);
+        drainedNanos = new long[env.config.players];
+        board = new AtomicReference<>(BoardSnapshot.empty(slotToCard.length, env.config.players));
+        boardCards = ThreadLocal.withInitial(() -> new int[slotToCard.length]);
+        tokenVersions = new AtomicIntegerArray(slotToCard.length * env.config.players);
+        claimSlots = new int[env.config.players][env.config.featureSize];
+        claimVersions = new int[env.config.players][env.config.featureSize];
+        claimSize = new int[env.config.players];
     }
 
     /**
@@ -62,7 +111,7 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, new Integer[env.config.maxTableSize], new Integer[env.config.deckSize]);
         for(int i=0;i<slotToCard.length;i++){
             slotToCard[i]=null;
         }
@@ -72,10 +121,10 @@ public class Table {
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        BoardSnapshot board = snapshot();
+        env.util.findSets(board.cards(), Integer.MAX_VALUE).forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            List<Integer> slots = Arrays.stream(set).mapToObj(board::slotOf).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
         });
@@ -83,9 +132,9 @@ public class Table {
 
     public Queue<Integer> getSetOnBoardSlots(){
         Queue<Integer> setOnBoard = new ArrayDeque<>(3);
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck,1).forEach(set -> {
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+        BoardSnapshot board = snapshot();
+        env.util.findSets(board.cards(),1).forEach(set -> {
+            List<Integer> slots = Arrays.stream(set).mapToObj(board::slotOf).sorted().collect(Collectors.toList());
             for (Integer i:
                  slots) {
                 setOnBoard.add(i);
@@ -121,6 +170,139 @@ public class Table {
 
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
+        publishCard(slot, card);
+        env.journal.record(EventJournal.Type.CARD_PLACED, -1, slot, card);
+        notifyListeners(slot);
+    }
+
+    /**
+     * Takes the card out of a slot (the dealer's part of removing a card; tokens are not touched).
+     * @param slot - the slot to clear.
+     *
+     * @post - the slot is empty and the card it held is not on the table.
+     */
+    public void clearSlot(int slot) {
+        Integer card = slotToCard[slot];
+        if (card == null) return;
+        cardToSlot[card] = null;
+        slotToCard[slot] = null;
+        publishCard(slot, -1);
+        env.journal.record(EventJournal.Type.CARD_REMOVED, -1, slot, card);
+        notifyListeners(slot);
+    }
+
+    /**
+     * Places cards on the table in several slots at once: the readers see them all appear together, and the dealer
+     * waits the table delay once (the user interface paces the drawing of the cards, see UserInterface.placeCards).
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed, in the same order.
+     * @param count - the number of cards (the first ones in the arrays).
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots, int count) {
+        if (count == 0) return;
+        try {
+            Thread.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException ignored) {}
+
+        for (int i = 0; i < count; i++) {
+            cardToSlot[cards[i]] = slots[i];
+            slotToCard[slots[i]] = cards[i];
+            env.journal.record(EventJournal.Type.CARD_PLACED, -1, slots[i], cards[i]);
+        }
+        publishCards(slots, cards, count);
+        for (int i = 0; i < count; i++)
+            notifyListeners(slots[i]);
+    }
+
+    /**
+     * Takes the cards out of several slots at once (tokens are not touched).
+     * @param slots - the slots to clear.
+     * @param count - the number of slots (the first ones in the array).
+     *
+     * @post - the slots are empty and the cards they held are not on the table.
+     */
+    public void clearSlots(int[] slots, int count) {
+        for (int i = 0; i < count; i++) {
+            Integer card = slotToCard[slots[i]];
+            if (card == null) continue;
+            cardToSlot[card] = null;
+            slotToCard[slots[i]] = null;
+            env.journal.record(EventJournal.Type.CARD_REMOVED, -1, slots[i], card);
+        }
+        publishCards(slots, null, count);
+        for (int i = 0; i < count; i++)
+            notifyListeners(slots[i]);
+    }
+
+    /**
+     * Moves cards from some slots to other, empty, slots at once (tokens are not touched).
+     * @param cards - the card ids.
+     * @param from  - the slots the cards are in, in the same order.
+     * @param to    - the empty slots the cards go to, in the same order.
+     * @param count - the number of cards (the first ones in the arrays).
+     *
+     * @post - each card is in its new slot and the slots it left are empty.
+     */
+    public void moveCards(int[] cards, int[] from, int[] to, int count) {
+        if (count == 0) return;
+        for (int i = 0; i < count; i++) {
+            slotToCard[from[i]] = null;
+            slotToCard[to[i]] = cards[i];
+            cardToSlot[cards[i]] = to[i];
+            env.journal.record(EventJournal.Type.CARD_MOVED, -1, to[i], cards[i]);
+        }
+        BoardSnapshot current;
+        do {
+            current = board.get();
+        } while (!board.compareAndSet(current, current.withCards(from, null, count).withCards(to, cards, count)));
+        for (int i = 0; i < count; i++) {
+            notifyListeners(from[i]);
+            notifyListeners(to[i]);
+        }
+    }
+
+    private void publishCards(int[] slots, int[] cards, int count) {
+        if (count == 0) return;
+        BoardSnapshot current;
+        do {
+            current = board.get();
+        } while (!board.compareAndSet(current, current.withCards(slots, cards, count)));
+    }
+
+    /**
+     * @return - the current board: a consistent, immutable view of the cards and tokens (see BoardSnapshot).
+     */
+    public BoardSnapshot snapshot() {
+        return board.get();
+    }
+
+    private void publishCard(int slot, int card) {
+        BoardSnapshot current;
+        do {
+            current = board.get();
+        } while (!board.compareAndSet(current, current.withCard(slot, card)));
+    }
+
+    /**
+     * @param listener - a listener to notify of every card placed or removed.
+     */
+    public synchronized void addListener(TableListener listener) {
+        TableListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeListener(TableListener listener) {
+        List<TableListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        updated.remove(listener);
+        listeners = updated.toArray(new TableListener[0]);
+    }
+
+    private void notifyListeners(int slot) {
+        for (TableListener listener : listeners)
+            listener.slotChanged(slot);
     }
 
     /**
@@ -141,18 +323,21 @@ public class Table {
      * Places a player token on a grid slot.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     * @return       - true iff the token was placed (there is a card in the slot).
      */
-    public void placeToken(int player, int slot) {
+    public boolean placeToken(int player, int slot) {
         if(slotToCard[slot]!=null) {
-            Boolean[][] oldVal;
-            Boolean[][] newVal;
+            BoardSnapshot current;
             do {
-                oldVal = getSlotsToPlayers().get();
-                newVal = getSlotsToPlayers().get();
-                newVal[slot][player] = true;
-                env.ui.placeToken(player,slot);
-            } while (!slotsToPlayers.compareAndSet(oldVal,newVal));
+                current = board.get();
+            } while (!board.compareAndSet(current, current.withToken(player, slot, true)));
+            // the version the token was placed on: if the dealer replaces the card meanwhile, a claim on it is stale
+            tokenVersions.set(slot * env.config.players + player, current.version(slot));
+            env.ui.placeToken(player,slot);
+            env.journal.record(EventJournal.Type.TOKEN_PLACED, player, slot, 0);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -162,57 +347,149 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        Boolean[][] oldVal;
-        Boolean[][] newVal;
+        BoardSnapshot current;
         do {
-            oldVal = getSlotsToPlayers().get();
-            newVal = oldVal;
-            newVal[slot][player] = false;
-            env.ui.removeToken(player,slot);
-        }while (!slotsToPlayers.compareAndSet(oldVal,newVal));
+            current = board.get();
+        } while (!board.compareAndSet(current, current.withToken(player, slot, false)));
+        env.ui.removeToken(player,slot);
+        env.journal.record(EventJournal.Type.TOKEN_REMOVED, player, slot, 0);
         return true;
     }
-    private AtomicReference<Boolean[][]> getSlotsToPlayers(){
-        return slotsToPlayers;
-    }
 
+    /**
+     * Makes a claim for the player's tokens and wakes up the dealer.
+     * @param id - the id of the player.
+     */
     public void playerFinished(int id){
-        Deque<Integer>oldVal;
-        Deque<Integer> newVal;
-        do {
-            oldVal=finished.get();
-            newVal=oldVal;
-            newVal.addLast(id);;
-        }while (!finished.compareAndSet(oldVal,newVal));
-    }
-    public int getPlayer(){
-        Deque<Integer>oldVal;
-        Deque<Integer> newVal;
-        int x;
-        do {
-            oldVal=finished.get();
-            newVal=oldVal;
-            x=newVal.removeFirst();
-        }while (!finished.compareAndSet(oldVal,newVal));
-        return x;
+        captureClaim(id);
+        long now = Math.max(1, System.nanoTime()); // 0 means no claim
+        claimNanos.set(id, now);
+        env.metrics.claimsReceived.increment();
+        env.journal.record(EventJournal.Type.CLAIM, id, -1, 0);
+        pendingClaims.set(id, now);
+        pendingClaimCount.incrementAndGet();
+        Thread consumer = claimConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
     }
-    public List<Integer> getPlayersDeck(int id){
-        List<Integer> playerDeck=new ArrayList<>();
-        for(int i=0;i<12;i++){
-            if(slotsToPlayers.get()[i][id]==true)
-                playerDeck.add(slotToCard[i]);
+
+    /**
+     * @param thread - the thread that takes the claims, to wake up when a claim is made.
+     */
+    public void setClaimConsumer(Thread thread) {
+        claimConsumer = thread;
+    }
+
+    public boolean hasClaims() {
+        return pendingClaimCount.get() > 0;
+    }
+
+    /**
+     * Takes all the pending claims, in the order they were made (claims made at the same time by player id).
+     *
+     * @param players - filled with the ids of the players who made the claims (at least as long as the players).
+     * @return - the number of claims taken.
+     */
+    public int drainClaims(int[] players) {
+        if (pendingClaimCount.get() == 0) return 0;
+        int count = 0;
+        for (int id = 0; id < drainedNanos.length; id++) {
+            long nanos = pendingClaims.getAndSet(id, 0);
+            if (nanos == 0) continue;
+            drainedNanos[id] = nanos;
+            // insertion sort: there are few claims, and the ids come in increasing order
+            int i = count++;
+            while (i > 0 && drainedNanos[players[i - 1]] - nanos > 0) {
+                players[i] = players[i - 1];
+                i--;
+            }
+            players[i] = id;
+        }
+        pendingClaimCount.addAndGet(-count);
+        return count;
+    }
+
+    /**
+     * Captures the slots of a player's tokens, and their versions when the tokens were placed, as the player's claim.
+     * @param id - the id of the player.
+     */
+    void captureClaim(int id) {
+        int size = 0;
+        BoardSnapshot tokens = snapshot();
+        for (int slot = 0; slot < tokens.size() && size < claimSlots[id].length; slot++)
+            if (tokens.hasToken(id, slot)) {
+                claimSlots[id][size] = slot;
+                claimVersions[id][size++] = tokenVersions.get(slot * env.config.players + id);
+            }
+        claimSize[id] = size;
+    }
+
+    /**
+     * Checks that the cards of a player's claim are still the ones its tokens were placed on (in O(set size): the
+     * versions the claim captured are compared to the slots' current versions).
+     *
+     * @param id - the id of the player, whose claim was taken by drainClaims.
+     * @return - true iff the claim has a token on every card of a set and none of their slots changed since.
+     */
+    public boolean isClaimCurrent(int id) {
+        if (claimSize[id] != claimSlots[id].length) return false;
+        BoardSnapshot current = snapshot();
+        for (int i = 0; i < claimSize[id]; i++)
+            if (current.version(claimSlots[id][i]) != claimVersions[id][i] || current.card(claimSlots[id][i]) < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Removes a player's tokens from the slots of its claim that changed since they were placed.
+     *
+     * @param id - the id of the player, whose claim was taken by drainClaims.
+     * @return - the number of tokens removed.
+     */
+    public int removeStaleTokens(int id) {
+        int removed = 0;
+        BoardSnapshot current = snapshot();
+        for (int i = 0; i < claimSize[id]; i++) {
+            int slot = claimSlots[id][i];
+            if (current.version(slot) != claimVersions[id][i] && current.hasToken(id, slot)) {
+                removeToken(id, slot);
+                removed++;
+            }
         }
-        return playerDeck;
+        return removed;
+    }
+
+    /**
+     * @param id - the id of the player.
+     * @return - the System.nanoTime of the player's last claim (0 if the player never claimed).
+     */
+    public long claimNanos(int id){
+        return claimNanos.get(id);
     }
+
+    public List<Integer> getPlayersDeck(int id){
+        return snapshot().cardsOf(id);
+    }
+
+    /**
+     * Like getPlayersDeck, without allocating.
+     *
+     * @param id    - the player.
+     * @param cards - an array to put the cards the player has tokens on in (by slot).
+     * @return - the number of cards the player has tokens on (only the ones that fit are put).
+     */
+    public int getPlayersCards(int id, int[] cards){
+        return snapshot().cardsOf(id, cards);
+    }
+
     /**
      * Checks whether there is a set on the board.
      * Used for no timer game modes.
      * @return true if there is a set on the board
      * */
     public boolean isThereASetOnBoard(){
-        List <Integer> currentCards = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        hints();
-        return env.util.findSets(currentCards,1).size() > 0;
+        if (env.config.hints) hints();
+        int[] cards = boardCards.get();
+        return env.util.hasSet(cards, snapshot().cards(cards));
     }
 
     public boolean isNoTimerGameMode(){
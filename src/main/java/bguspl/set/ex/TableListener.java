@@ -0,0 +1,14 @@
+package bguspl.set.ex;
+
+/**
+ * Gets notified of the changes of the cards on the table.
+ */
+public interface TableListener {
+
+    /**
+     * Called (on the dealer thread) after a card was placed in a slot or removed from it. Should return quickly.
+     *
+     * @param slot - the slot that changed.
+     */
+    void slotChanged(int slot);
+}
@@ -0,0 +1,71 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The round-robin order in which the computer players press keys in the deterministic scheduling mode.
+ * Computer players are the players with ids first .. first + count - 1. Nobody's turn comes while the order is closed
+ * (before the first deal and while the dealer redeals the table).
+ */
+class TurnOrder {
+
+    private final int first;
+    private final int count;
+    private final AtomicInteger turn = new AtomicInteger();
+    private final AtomicReferenceArray<BotDriver.Task> bots;
+    private volatile boolean open;
+
+    TurnOrder(int first, int count) {
+        this.first = first;
+        this.count = count;
+        bots = new AtomicReferenceArray<>(Math.max(count, 1));
+    }
+
+    /**
+     * @param id  - the id of a computer player.
+     * @param bot - the player's bot, woken up when its turn comes.
+     */
+    void register(int id, BotDriver.Task bot) {
+        bots.set(id - first, bot);
+        if (isTurn(id)) bot.wake();
+    }
+
+    /**
+     * @param id - the id of a computer player.
+     * @return - true iff it is the player's turn.
+     */
+    boolean isTurn(int id) {
+        return open && count > 0 && first + Math.floorMod(turn.get(), count) == id;
+    }
+
+    /**
+     * Lets the players take turns (again), waking up the player whose turn it is.
+     */
+    void open() {
+        open = true;
+        if (count > 0) wake(Math.floorMod(turn.get(), count));
+    }
+
+    /**
+     * Holds the next turn until the order is opened again (a turn in progress is not interrupted).
+     */
+    void close() {
+        open = false;
+    }
+
+    /**
+     * Ends the player's turn and wakes up the next player.
+     *
+     * @param id - the id of the computer player whose turn it is.
+     */
+    void next(int id) {
+        if (count == 0 || first + Math.floorMod(turn.get(), count) != id) return;
+        wake(Math.floorMod(turn.incrementAndGet(), count));
+    }
+
+    private void wake(int index) {
+        BotDriver.Task bot = bots.get(index);
+        if (bot != null) bot.wake();
+    }
+}
@@ -0,0 +1,36 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardMapTest {
+
+    @Test
+    void actsAsAMapThroughGrowthAndRemovals() {
+        CardMap map = new CardMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            int card = random.nextInt(500) * 59; // clustered ids
+            if (random.nextInt(3) == 0) {
+                map.remove(card);
+                expected.remove(card);
+            } else {
+                map.put(card, i);
+                expected.put(card, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int card = 0; card < 500 * 59; card++)
+            assertEquals(expected.getOrDefault(card, -1).intValue(), map.get(card));
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.contains(59));
+        assertEquals(-1, map.get(-1));
+    }
+}
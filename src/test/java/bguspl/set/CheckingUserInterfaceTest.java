@@ -0,0 +1,81 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import static bguspl.set.EventJournal.Type.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckingUserInterfaceTest {
+
+    /**
+     * The recorded game: cards 40 and 7 placed, player 1 places and removes a token on slot 0, scores and freezes,
+     * card 40 is removed and card 7 moved to slot 0, and the game ends.
+     */
+    private static CheckingUserInterface recorded() {
+        EventJournal.Type[] types = {CARD_PLACED, CARD_PLACED, TOKEN_PLACED, TOKEN_REMOVED, SCORE, FREEZE, CARD_REMOVED, CARD_MOVED, GAME_END};
+        int[] player = {-1, -1, 1, 1, 1, 1, -1, -1, -1};
+        int[] slot = {0, 1, 0, 0, -1, -1, 0, 0, -1};
+        int[] value = {40, 7, 0, 0, 1, 1000, 40, 7, 1};
+        return new CheckingUserInterface(2, types, player, slot, value);
+    }
+
+    @Test
+    void matchingCallsReportNothing() {
+        CheckingUserInterface ui = recorded();
+        ui.placeCard(40, 0);
+        ui.placeCard(7, 1);
+        ui.placeToken(1, 0);
+        ui.removeToken(1, 0);
+        ui.setScore(1, 1);
+        ui.setFreeze(1, 1000);
+        ui.setFreeze(1, 0);
+        ui.removeCard(0);
+        ui.removeCard(2); // empty: not a change
+        ui.moveCards(new int[]{7}, new int[]{1}, new int[]{0}, 1);
+        ui.announceWinner(new int[]{1});
+        ui.checkComplete();
+        assertEquals(0, ui.mismatchCount(), ui.mismatches().toString());
+    }
+
+    @Test
+    void differencesAreReported() {
+        CheckingUserInterface ui = recorded();
+        ui.placeCard(40, 0);
+        ui.placeCard(8, 1);
+        ui.checkComplete();
+        assertTrue(ui.mismatches().get(0).contains("expected card 7"));
+        assertEquals(7, ui.mismatchCount()); // the card, then everything else that was never called
+    }
+
+    @Test
+    void tokensFreezesMovesAndWinnersAreChecked() {
+        CheckingUserInterface ui = recorded();
+        ui.placeCard(40, 0);
+        ui.placeCard(7, 1);
+        ui.placeToken(1, 1);
+        ui.removeToken(1, 0);
+        ui.setScore(1, 1);
+        ui.setFreeze(1, 3000);
+        ui.removeCard(0);
+        ui.moveCards(new int[]{7}, new int[]{1}, new int[]{2}, 1);
+        ui.announceWinner(new int[]{0});
+        ui.checkComplete();
+        assertEquals(4, ui.mismatchCount(), ui.mismatches().toString());
+        assertTrue(ui.mismatches().get(0).contains("expected token on slot 0, got token on slot 1"));
+        assertTrue(ui.mismatches().get(1).contains("expected freeze of 1000ms"));
+        assertTrue(ui.mismatches().get(2).contains("expected card 7 in slot 0, got card 7 in slot 2"));
+        assertTrue(ui.mismatches().get(3).contains("expected winners [1]"));
+    }
+
+    @Test
+    void freezesAreCountedOnce() {
+        CheckingUserInterface ui = recorded();
+        ui.setFreeze(1, 1000);
+        ui.setFreeze(1, 999);
+        assertTrue(ui.isFrozen(1));
+        ui.setFreeze(1, 0);
+        assertFalse(ui.isFrozen(1));
+        assertEquals(1, ui.freezes(1));
+        assertEquals(0, ui.freezes(0));
+    }
+}
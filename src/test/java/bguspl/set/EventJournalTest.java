@@ -0,0 +1,62 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventJournalTest {
+
+    @Test
+    void recordsAreReadBackInOrder(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("game.journal");
+        EventJournal journal = EventJournal.open(file, 4096);
+        journal.record(EventJournal.Type.CARD_PLACED, -1, 5, 42);
+        journal.record(EventJournal.Type.KEY_PRESS, 2, 5, 0);
+        journal.record(EventJournal.Type.VERDICT, 2, -1, 1);
+        journal.close();
+
+        EventJournal.Reader reader = new EventJournal.Reader(file);
+        assertTrue(reader.next());
+        assertEquals(EventJournal.Type.CARD_PLACED, reader.type);
+        assertEquals(-1, reader.player);
+        assertEquals(5, reader.slot);
+        assertEquals(42, reader.value);
+        long first = reader.nanos;
+        assertTrue(first >= reader.startNanos);
+        assertTrue(reader.next());
+        assertEquals(EventJournal.Type.KEY_PRESS, reader.type);
+        assertEquals(2, reader.player);
+        assertTrue(reader.nanos >= first);
+        assertTrue(reader.next());
+        assertEquals(EventJournal.Type.VERDICT, reader.type);
+        assertEquals(1, reader.value);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void fullJournalDropsEvents(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("small.journal");
+        EventJournal journal = EventJournal.open(file, EventJournal.HEADER_SIZE + 2 * EventJournal.RECORD_SIZE);
+        for (int i = 0; i < 5; i++)
+            journal.record(EventJournal.Type.SCORE, 0, -1, i);
+        assertEquals(3, journal.dropped());
+        journal.close();
+
+        EventJournal.Reader reader = new EventJournal.Reader(file);
+        int records = 0;
+        while (reader.next()) records++;
+        assertEquals(2, records);
+    }
+
+    @Test
+    void disabledJournalRecordsNothing() {
+        assertFalse(EventJournal.DISABLED.isEnabled());
+        EventJournal.DISABLED.record(EventJournal.Type.GAME_START, -1, -1, 0);
+        EventJournal.DISABLED.flush();
+        assertEquals(0, EventJournal.DISABLED.dropped());
+    }
+}
@@ -0,0 +1,32 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameRandomTest {
+
+    @Test
+    void sameSeedSameDraws() {
+        GameRandom a = new GameRandom(42, 3);
+        GameRandom b = new GameRandom(42, 3);
+        // draw from the generators in different orders: each one depends on the seed only
+        for (int i = 0; i < 100; i++)
+            assertEquals(a.player(2).nextInt(81), b.player(2).nextInt(81));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(a.deck().nextInt(81), b.deck().nextInt(81));
+            assertEquals(a.player(0).nextInt(12), b.player(0).nextInt(12));
+        }
+    }
+
+    @Test
+    void generatorsAreIndependent() {
+        GameRandom random = new GameRandom(42, 2);
+        long[] deck = new long[8], player = new long[8];
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = random.deck().nextLong();
+            player[i] = random.player(0).nextLong();
+        }
+        assertFalse(java.util.Arrays.equals(deck, player));
+    }
+}
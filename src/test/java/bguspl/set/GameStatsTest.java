@@ -0,0 +1,67 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameStatsTest {
+
+    @Test
+    void aRunningGameIsReadableOverJmx() throws Exception {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("ComputerPlayerStrategy", "Smart");
+        properties.put("BotReactionSeconds", "0.02");
+        properties.put("BotReactionDeviationSeconds", "0.01");
+        properties.put("TurnTimeoutSeconds", "-1");
+        properties.put("PointFreezeSeconds", "0.05");
+        properties.put("PenaltyFreezeSeconds", "0.05");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Jmx", "True");
+        properties.put("LogLevel", "OFF");
+        HeadlessGame game = new HeadlessGame(properties);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("bguspl.set:type=Game,id=" + game.env.metrics.gameId);
+
+        Thread dealer = new Thread(() -> {
+            try {
+                game.play();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        dealer.start();
+        try {
+            long deadline = System.currentTimeMillis() + 30000;
+            while (game.env.metrics.sets.sum() < 3 && dealer.isAlive() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertTrue(server.isRegistered(name));
+
+            long claims = (Long) server.getAttribute(name, "ClaimsVerified");
+            long sets = (Long) server.getAttribute(name, "ValidClaims");
+            assertTrue(sets >= 3, "valid claims: " + sets);
+            assertTrue(claims >= sets);
+            assertTrue((Long) server.getAttribute(name, "ClaimQueueDepth") >= 0);
+            double p50 = (Double) server.getAttribute(name, "ClaimToVerdictP50Micros");
+            double p99 = (Double) server.getAttribute(name, "ClaimToVerdictP99Micros");
+            assertTrue(p50 > 0);
+            assertTrue(p99 >= p50);
+            assertEquals(2, ((long[]) server.getAttribute(name, "PlayerFreezeMillis")).length);
+
+            ObjectName host = new ObjectName("bguspl.set:type=Host");
+            assertTrue((Long) server.getAttribute(host, "GamesStarted") >= 1);
+            assertTrue((Integer) server.getAttribute(host, "GamesRunning") >= 1);
+        } finally {
+            game.dealer.terminate();
+            dealer.join(5000);
+        }
+        assertFalse(dealer.isAlive());
+        assertFalse(server.isRegistered(name));
+    }
+}
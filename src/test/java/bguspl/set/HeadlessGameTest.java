@@ -0,0 +1,135 @@
+package bguspl.set;
+
+import bguspl.set.ex.BotDriver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeadlessGameTest {
+
+    /**
+     * @return - the CPU time (nanoseconds) of the game's threads (the ones in its thread group, and the bots' shared
+     * driver threads), by thread id: not the threads other tests left in the JVM.
+     */
+    private static Map<Long, Long> cpuTimes(ThreadMXBean threads, ThreadGroup game) {
+        List<Thread> gameThreads = new ArrayList<>(BotDriver.shared().threads());
+        Thread[] inGroup = new Thread[game.activeCount() + 16];
+        gameThreads.addAll(Arrays.asList(inGroup).subList(0, game.enumerate(inGroup)));
+        Map<Long, Long> times = new HashMap<>();
+        for (Thread thread : gameThreads)
+            times.put(thread.getId(), Math.max(0, threads.getThreadCpuTime(thread.getId())));
+        return times;
+    }
+
+    @Test
+    void anIdleGameStaysUnderItsCpuBudget() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "6");
+        properties.put("ComputerPlayerStrategy", "Smart");
+        properties.put("BotReactionSeconds", "600"); // the bots see the sets but do not press yet
+        properties.put("TurnTimeoutSeconds", "60");
+        properties.put("TurnTimeoutWarningSeconds", "3");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Jmx", "False");
+        HeadlessGame game = new HeadlessGame(properties);
+        ThreadGroup group = new ThreadGroup("idle-game"); // the dealer and player threads are started in it
+        Thread dealer = new Thread(group, () -> {
+            try {
+                game.play();
+            } catch (InterruptedException ignored) {
+            }
+        }, "idle-game");
+        dealer.start();
+        try {
+            Thread.sleep(500); // dealt, and the bots are waiting to react
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            Map<Long, Long> before = cpuTimes(threads, group);
+            long start = System.nanoTime();
+            Thread.sleep(2000);
+            Map<Long, Long> after = cpuTimes(threads, group);
+            long wall = System.nanoTime() - start;
+            long cpu = 0;
+            for (Map.Entry<Long, Long> thread : after.entrySet())
+                cpu += thread.getValue() - before.getOrDefault(thread.getKey(), 0L);
+
+            double utilisation = (double) cpu / wall;
+            assertTrue(utilisation < 0.01, "idle CPU: " + utilisation * 100 + "% of a core");
+        } finally {
+            game.dealer.terminate();
+            dealer.join(5000);
+        }
+    }
+
+    /**
+     * Plays a seeded game with its events journaled, until the dealer has checked a number of claims.
+     *
+     * @return - the events of the game up to the last of those claims' verdicts (type, player, slot and value:
+     * everything but the times).
+     */
+    private static List<String> seededGame(Properties properties, Path file, int claims) throws IOException, InterruptedException {
+        EventJournal journal = EventJournal.open(file, 1 << 22);
+        HeadlessGame game = new HeadlessGame(HeadlessGame.silentLogger(), new Config(HeadlessGame.silentLogger(), properties),
+                new UserInterfaceHeadless(), null, journal);
+        Thread dealer = new Thread(() -> {
+            try {
+                game.play();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        dealer.start();
+        try {
+            long deadline = System.currentTimeMillis() + 30000;
+            while (game.env.metrics.claims.sum() < claims && dealer.isAlive() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+        } finally {
+            game.dealer.terminate();
+            dealer.join(5000);
+            journal.close();
+        }
+
+        List<String> events = new ArrayList<>();
+        EventJournal.Reader reader = new EventJournal.Reader(file);
+        for (int verdicts = 0; verdicts < claims && reader.next(); ) {
+            events.add(reader.type + " " + reader.player + " " + reader.slot + " " + reader.value);
+            if (reader.type == EventJournal.Type.VERDICT) verdicts++;
+        }
+        return events;
+    }
+
+    @Test
+    void twoRunsOfTheSameSeedDoIdenticalWork(@TempDir Path dir) throws IOException, InterruptedException {
+        Properties properties = new Properties();
+        properties.put("Seed", "7");
+        properties.put("DeterministicScheduling", "True");
+        properties.put("FeatureCount", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "3");
+        properties.put("ComputerPlayerStrategy", "Random");
+        properties.put("TurnTimeoutSeconds", "600"); // the timer never runs out, so only the presses decide the game
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Jmx", "False");
+        properties.put("LogLevel", "OFF");
+
+        List<String> first = seededGame(properties, dir.resolve("first.journal"), 200);
+        List<String> second = seededGame(properties, dir.resolve("second.journal"), 200);
+        assertEquals(200, first.stream().filter(event -> event.startsWith("VERDICT")).count());
+        assertTrue(first.stream().filter(event -> event.startsWith("SCORE")).count() > 1);
+        assertEquals(first, second); // the same deal order, presses, claims, verdicts and scores
+    }
+}
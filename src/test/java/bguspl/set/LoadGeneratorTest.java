@@ -0,0 +1,39 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    void syntheticPressesComeAtTheRequestedRate() {
+        for (double burst : new double[]{1, 5}) {
+            LoadGenerator.Schedule schedule = new LoadGenerator.SyntheticSchedule(new SplittableRandom(1), 1000, burst, 12);
+            int presses = 20000, sameTime = 0;
+            long previous = -1;
+            for (int i = 0; i < presses; i++) {
+                if (schedule.nextNanos() == previous) sameTime++;
+                previous = schedule.nextNanos();
+                int slot = schedule.take();
+                assertTrue(slot >= 0 && slot < 12);
+            }
+            double rate = presses / (previous / 1e9);
+            assertEquals(1000, rate, 50, "burst " + burst);
+            assertEquals(1 - 1 / burst, (double) sameTime / presses, 0.02, "burst " + burst);
+        }
+    }
+
+    @Test
+    void tracesAreSpedUpAndRepeated() {
+        LoadGenerator.Schedule schedule = new LoadGenerator.TraceSchedule(new long[]{0, 1000, 3999}, new int[]{4, 5, 6}, 2);
+        long[] expected = {0, 500, 1999, 2000, 2500};
+        int[] slots = {4, 5, 6, 4, 5};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], schedule.nextNanos());
+            assertEquals(slots[i], schedule.take());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class NetworkServerTest {
+
+    private Player[] players;
+    private NetworkUserInterface ui;
+    private SpectatorFeed feed;
+    private NetworkServer server;
+    private final List<SocketChannel> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("HumanPlayers", "2");
+        properties.put("ComputerPlayers", "0");
+        properties.put("SpectatorTickSeconds", "0.01");
+        properties.put("SpectatorSnapshotSeconds", "0");
+        Config config = new Config(HeadlessGame.silentLogger(), properties);
+        players = new Player[]{mock(Player.class), mock(Player.class)};
+        feed = new SpectatorFeed(config, null);
+        ui = new NetworkUserInterface(config, feed);
+        server = new NetworkServer(HeadlessGame.silentLogger(), config, players, ui, feed, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        for (SocketChannel client : clients)
+            client.close();
+        server.close();
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", server.port()));
+        clients.add(client);
+        return client;
+    }
+
+    private static void send(SocketChannel client, byte type, int value) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(NetworkServer.MESSAGE_SIZE).put(type).putInt(value);
+        message.flip();
+        while (message.hasRemaining()) client.write(message);
+    }
+
+    /**
+     * @return - the next frame: type, a, b.
+     */
+    private static long[] receive(SocketChannel client) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(NetworkUserInterface.FRAME_SIZE);
+        while (frame.hasRemaining())
+            if (client.read(frame) < 0) throw new IOException("closed");
+        frame.flip();
+        return new long[]{frame.get(), frame.getInt(), frame.getLong()};
+    }
+
+    /**
+     * @return - the next spectator feed frame (without its length).
+     */
+    private static ByteBuffer receiveFeed(SocketChannel client) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (length.hasRemaining())
+            if (client.read(length) < 0) throw new IOException("closed");
+        ByteBuffer frame = ByteBuffer.allocate(length.getInt(0));
+        while (frame.hasRemaining())
+            if (client.read(frame) < 0) throw new IOException("closed");
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    void pressesReachThePlayer() throws IOException {
+        SocketChannel client = connect();
+        send(client, NetworkServer.JOIN, 1);
+        assertArrayEquals(new long[]{NetworkUserInterface.WELCOME, 1, 12}, receive(client));
+        send(client, NetworkServer.PRESS, 3);
+        send(client, NetworkServer.PRESS, 11);
+        verify(players[1], timeout(2000)).keyPressed(3);
+        verify(players[1], timeout(2000)).keyPressed(11);
+        verify(players[0], never()).keyPressed(anyInt());
+    }
+
+    @Test
+    void aJoinerThatResetsAtOnceDoesNotStopTheServer() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            SocketChannel quitter = connect();
+            quitter.setOption(StandardSocketOptions.SO_LINGER, 0); // close with a reset: welcoming it fails
+            send(quitter, NetworkServer.JOIN, -1);
+            quitter.close();
+        }
+        SocketChannel client = connect();
+        send(client, NetworkServer.JOIN, 0);
+        assertArrayEquals(new long[]{NetworkUserInterface.WELCOME, 0, 12}, receive(client));
+    }
+
+    @Test
+    void aPlayerIsPlayedByOneConnection() throws IOException {
+        SocketChannel first = connect(), second = connect();
+        send(first, NetworkServer.JOIN, 0);
+        assertEquals(0, receive(first)[1]);
+        send(second, NetworkServer.JOIN, 0);
+        assertEquals(-1, receive(second)[1]); // only watches
+    }
+
+    @Test
+    void joinersGetTheStateAndEveryClientGetsTheUpdates() throws IOException {
+        ui.placeCard(40, 2);
+        ui.setScore(1, 4);
+        int count = 200;
+        for (int i = 0; i < count; i++)
+            send(connect(), NetworkServer.JOIN, -1);
+        for (SocketChannel client : clients) {
+            assertEquals(NetworkUserInterface.WELCOME, receive(client)[0]);
+            assertArrayEquals(new long[]{NetworkUserInterface.PLACE_CARD, 2, 40}, receive(client));
+            assertArrayEquals(new long[]{NetworkUserInterface.SCORE, 0, 0}, receive(client));
+            assertArrayEquals(new long[]{NetworkUserInterface.SCORE, 1, 4}, receive(client));
+        }
+        assertEquals(count, server.connections());
+
+        ui.placeToken(0, 2);
+        ui.removeCard(2);
+        for (SocketChannel client : clients) {
+            assertArrayEquals(new long[]{NetworkUserInterface.PLACE_TOKEN, 2, 0}, receive(client));
+            assertArrayEquals(new long[]{NetworkUserInterface.REMOVE_CARD, 2, 0}, receive(client));
+        }
+    }
+
+    @Test
+    void spectatorsGetASnapshotThenTheSameDeltas() throws IOException {
+        ui.placeCard(40, 2);
+        for (int i = 0; i < 100; i++)
+            send(connect(), NetworkServer.SPECTATE, 0);
+        for (SocketChannel client : clients) {
+            ByteBuffer snapshot = receiveFeed(client);
+            assertEquals(SpectatorFeed.SNAPSHOT, snapshot.get(0));
+        }
+
+        synchronized (feed) { // in one tick
+            ui.placeToken(1, 2);
+            ui.removeToken(1, 2);
+            ui.placeToken(1, 2); // coalesced into the slot's latest state
+            ui.setScore(0, 1);
+        }
+        ByteBuffer first = null;
+        for (SocketChannel client : clients) {
+            ByteBuffer delta = receiveFeed(client);
+            assertEquals(SpectatorFeed.DELTA, delta.get(0));
+            if (first == null) first = delta;
+            else assertEquals(first, delta); // one encoding for all
+        }
+        assertEquals(1, first.getShort(16)); // one slot
+        assertEquals(2, first.getShort(18));
+        assertEquals(40, first.getInt(20));
+        assertEquals(2L, first.getLong(24)); // player 1's token
+        assertEquals(1, first.getShort(32)); // one player
+    }
+
+    @Test
+    void aStalledSpectatorKeepsABoundedQueue() {
+        ArrayDeque<ByteBuffer> frames = new ArrayDeque<>();
+        for (int i = 0; i < 3 * NetworkServer.MAX_QUEUED_FRAMES; i++) { // a snapshot every tick
+            assertTrue(NetworkServer.enqueue(frames, ByteBuffer.allocate(8), true));
+            assertTrue(frames.size() <= NetworkServer.MAX_QUEUED_FRAMES);
+        }
+
+        frames.peekFirst().position(3); // partially written: kept
+        ByteBuffer started = frames.peekFirst();
+        while (frames.size() < NetworkServer.MAX_QUEUED_FRAMES)
+            NetworkServer.enqueue(frames, ByteBuffer.allocate(8), false);
+        assertFalse(NetworkServer.enqueue(frames, ByteBuffer.allocate(8), false)); // a delta waits for a snapshot
+        assertEquals(1, frames.size());
+        ByteBuffer snapshot = ByteBuffer.allocate(8);
+        assertTrue(NetworkServer.enqueue(frames, snapshot, true));
+        assertSame(started, frames.pollFirst());
+        assertSame(snapshot, frames.pollFirst());
+    }
+}
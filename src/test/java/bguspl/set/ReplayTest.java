@@ -0,0 +1,48 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayTest {
+
+    @Test
+    void aRecordedGameReplaysWithoutMismatches(@TempDir Path dir) throws IOException, InterruptedException {
+        Properties properties = new Properties();
+        properties.put("Seed", "42");
+        properties.put("FeatureCount", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("ComputerPlayerStrategy", "Smart");
+        properties.put("BotReactionSeconds", "0.02");
+        properties.put("BotReactionDeviationSeconds", "0.01");
+        properties.put("TurnTimeoutSeconds", "-1");
+        properties.put("PointFreezeSeconds", "0.05");
+        properties.put("PenaltyFreezeSeconds", "0.05");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Jmx", "False");
+        properties.put("Journal", "True");
+        properties.put("LogLevel", "OFF");
+
+        Path file = dir.resolve("game.journal");
+        EventJournal journal = EventJournal.open(file, 1 << 20);
+        Config config = new Config(HeadlessGame.silentLogger(), properties);
+        HeadlessGame.Result result;
+        try {
+            result = new HeadlessGame(HeadlessGame.silentLogger(), config, new UserInterfaceHeadless(), null, journal).play();
+        } finally {
+            journal.close();
+        }
+        assertEquals(0, journal.dropped());
+
+        Replay.Report report = Replay.replay(Replay.Recording.load(file), properties, false);
+        assertEquals(0, report.mismatchCount, report.mismatches.toString());
+        assertTrue(report.presses > 0);
+        assertTrue(result.metrics.sets.sum() > 0);
+    }
+}
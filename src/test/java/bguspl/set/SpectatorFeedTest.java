@@ -0,0 +1,56 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpectatorFeedTest {
+
+    private static SpectatorFeed feed() {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "3");
+        return new SpectatorFeed(new Config(HeadlessGame.silentLogger(), properties), null);
+    }
+
+    @Test
+    void deltasHoldOnlyTheChanges() {
+        SpectatorFeed feed = feed();
+        feed.placeCard(5, 0);
+        feed.encode(true);
+        assertNull(feed.encode(false)); // nothing changed
+
+        feed.setCountdown(3000, false);
+        feed.setCountdown(2990, false);
+        feed.placeCard(6, 11);
+        ByteBuffer delta = feed.encode(false);
+        assertEquals(SpectatorFeed.DELTA, delta.get(4));
+        assertEquals(SpectatorFeed.TIMER_COUNTDOWN, delta.get(11));
+        assertEquals(2990, delta.getLong(12)); // the latest countdown only
+        assertEquals(1, delta.getShort(20));
+        assertEquals(11, delta.getShort(22));
+        assertEquals(6, delta.getInt(24));
+        assertEquals(0, delta.getShort(36)); // no player changed
+        assertEquals(delta.getInt(0), delta.remaining() - 4);
+    }
+
+    @Test
+    void snapshotsHoldEverything() {
+        SpectatorFeed feed = feed();
+        feed.placeCard(5, 0);
+        feed.setScore(2, 7);
+        feed.announceWinner(new int[]{2});
+        ByteBuffer snapshot = feed.encode(true);
+        assertEquals(SpectatorFeed.SNAPSHOT, snapshot.get(4));
+        assertEquals(12, snapshot.getShort(20)); // every slot
+        int players = 22 + 12 * (2 + 4 + 8);
+        assertEquals(3, snapshot.getShort(players));
+        assertEquals(7, snapshot.getInt(players + 2 + 2 * 10 + 2));
+        assertEquals(1, snapshot.getShort(players + 2 + 3 * 10));
+        assertTrue(snapshot.isReadOnly());
+    }
+}
@@ -0,0 +1,66 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TournamentTest {
+
+    private static HeadlessGame.Result result(int... scores) {
+        GameMetrics metrics = new GameMetrics(scores.length);
+        for (int score : scores)
+            metrics.sets.add(score);
+        metrics.addPenalty(0);
+        return new HeadlessGame.Result(scores, 1_000_000, metrics);
+    }
+
+    @Test
+    void talliesByEntrantAndSharesTies() {
+        Tournament.Tally tally = new Tournament.Tally(3);
+        tally.add(new int[]{2, 0, 1}, result(5, 3, 1)); // entrant 2 sits first and wins
+        tally.add(new int[]{0, 1, 2}, result(4, 4, 0)); // entrants 0 and 1 share the win
+
+        assertEquals(2, tally.games);
+        assertEquals(0.5, tally.wins[0], 1e-9);
+        assertEquals(0.5, tally.wins[1], 1e-9);
+        assertEquals(1.0, tally.wins[2], 1e-9);
+        assertArrayEquals(new long[]{7, 5, 5}, tally.points);
+        assertArrayEquals(new long[]{1, 0, 1}, tally.penalties); // the penalty was always in seat 0
+        assertEquals(17, tally.sets);
+        assertEquals(2, tally.setsPerGame.count());
+    }
+
+    @Test
+    void mergesTallies() {
+        Tournament.Tally a = new Tournament.Tally(2), b = new Tournament.Tally(2), total = new Tournament.Tally(2);
+        a.add(new int[]{0, 1}, result(2, 1));
+        b.add(new int[]{1, 0}, result(2, 1));
+        b.failed++;
+        total.add(a);
+        total.add(b);
+
+        assertEquals(2, total.games);
+        assertEquals(1, total.failed);
+        assertEquals(1.0, total.wins[0], 1e-9);
+        assertEquals(1.0, total.wins[1], 1e-9);
+        assertEquals(2, total.gameLength.count());
+    }
+
+    @Test
+    void gameSeedsDependOnTheGameOnly() {
+        assertEquals(Tournament.gameSeed(7, 3), Tournament.gameSeed(7, 3));
+        assertNotEquals(Tournament.gameSeed(7, 3), Tournament.gameSeed(7, 4));
+    }
+
+    @Test
+    void nearbyTournamentsPlayDifferentGames() {
+        Set<Long> seeds = new HashSet<>();
+        for (long tournament = 0; tournament < 10; tournament++)
+            for (long game = 0; game < 100; game++)
+                seeds.add(Tournament.gameSeed(tournament, game));
+        assertEquals(1000, seeds.size());
+    }
+}
@@ -0,0 +1,104 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UtilImplTest {
+
+    private static UtilImpl util(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        return new UtilImpl(new Config(logger, properties));
+    }
+
+    @Test
+    void completesEveryPair() {
+        UtilImpl util = util(3, 4);
+        for (int a = 0; a < 81; a++)
+            for (int b = a + 1; b < 81; b++) {
+                int c = util.completeSet(new int[]{a, b});
+                assertTrue(c >= 0 && c < 81 && c != a && c != b);
+                assertTrue(util.testSet(new int[]{a, b, c}));
+            }
+    }
+
+    @Test
+    void completesLargerSets() {
+        UtilImpl util = util(4, 3);
+        int[] cards = new int[4];
+        for (int a = 0; a < 64; a++)
+            for (int b = a + 1; b < 64; b++)
+                for (int c = b + 1; c < 64; c++) {
+                    cards[0] = a;
+                    cards[1] = b;
+                    cards[2] = c;
+                    int d = util.completeSet(cards);
+                    cards[3] = d;
+                    assertEquals(d >= 0, d >= 0 && util.testSet(cards));
+                    if (d < 0) { // no card completes them: check that none does
+                        for (int x = 0; x < 64; x++) {
+                            cards[3] = x;
+                            if (x != a && x != b && x != c) assertFalse(util.testSet(cards));
+                        }
+                    }
+                }
+    }
+
+    @Test
+    void findsEverySetOnce() {
+        UtilImpl util = util(3, 4);
+        List<Integer> deck = IntStream.range(0, 81).boxed().collect(Collectors.toList());
+        List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+        assertEquals(1080, sets.size()); // 81 * 80 / 6
+        assertEquals(1080, sets.stream().map(Arrays::toString).distinct().count());
+        for (int[] set : sets)
+            assertTrue(util.testSet(set));
+    }
+
+    @Test
+    void findsTheSetsOfALargeVariant() {
+        UtilImpl util = util(3, 10);
+        List<Integer> deck = IntStream.range(0, 59049).boxed().collect(Collectors.toList());
+        assertEquals(1, util.findSets(deck, 1).size());
+
+        Collections.shuffle(deck, new Random(7));
+        List<Integer> board = deck.subList(0, 120);
+        int expected = 0;
+        for (int a = 0; a < board.size(); a++)
+            for (int b = a + 1; b < board.size(); b++)
+                for (int c = b + 1; c < board.size(); c++)
+                    if (util.testSet(new int[]{board.get(a), board.get(b), board.get(c)})) expected++;
+        assertEquals(expected, util.findSets(board, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void findsTheSameSetsOfMoreThanThreeCardsAsEveryCombination() {
+        for (int[] variant : new int[][]{{4, 3}, {5, 3}, {4, 4}}) {
+            UtilImpl util = util(variant[0], variant[1]);
+            List<Integer> deck = IntStream.range(0, (int) Math.pow(variant[0], variant[1])).boxed()
+                    .collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(5));
+            for (int size : new int[]{12, UtilImpl.PARALLEL_CARDS, 56}) {
+                List<Integer> board = deck.subList(0, size);
+                List<int[]> expected = util.combinationSets(board, Integer.MAX_VALUE);
+                List<int[]> sets = util.findSets(board, Integer.MAX_VALUE);
+                assertEquals(expected.stream().map(Arrays::toString).sorted().collect(Collectors.toList()),
+                        sets.stream().map(Arrays::toString).sorted().collect(Collectors.toList()));
+                assertEquals(Math.min(1, expected.size()), util.findSets(board, 1).size());
+            }
+        }
+    }
+}
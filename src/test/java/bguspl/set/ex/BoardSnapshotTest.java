@@ -0,0 +1,41 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoardSnapshotTest {
+
+    @Test
+    void changesMakeNewSnapshotsAndLeaveTheOldOnesAsTheyWere() {
+        BoardSnapshot empty = BoardSnapshot.empty(40, 70);
+        BoardSnapshot placed = empty.withCard(33, 7);
+        BoardSnapshot token = placed.withToken(65, 33, true);
+
+        assertEquals(-1, empty.card(33));
+        assertEquals(0, empty.countCards());
+        assertEquals(7, placed.card(33));
+        assertEquals(1, placed.countCards());
+        assertFalse(placed.hasToken(65, 33));
+        assertTrue(token.hasToken(65, 33));
+        assertFalse(token.hasToken(1, 33));
+        assertEquals(Arrays.asList(7), token.cardsOf(65));
+        assertEquals(2, token.sequence());
+        assertSame(token, token.withToken(65, 33, true)); // no change
+    }
+
+    @Test
+    void aSlotsVersionChangesWithItsCardOnly() {
+        BoardSnapshot board = BoardSnapshot.empty(12, 2).withCard(3, 5);
+        int placed = board.version(3);
+        board = board.withToken(0, 3, true);
+        assertEquals(placed, board.version(3));
+        board = board.withCard(3, -1).withCard(3, 5); // the same card again is still a change
+        assertNotEquals(placed, board.version(3));
+        assertTrue(board.hasToken(0, 3)); // tokens are the table's to remove
+        assertEquals(3, board.slotOf(5));
+        assertEquals(-1, board.slotOf(6));
+    }
+}
@@ -0,0 +1,77 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotDriverTest {
+
+    private final BotDriver driver = new BotDriver(2, TimeUnit.MILLISECONDS.toNanos(1), 8);
+
+    @Test
+    void delayedDecisionsKeepTheirPace() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long[] calls = new long[10];
+        AtomicInteger count = new AtomicInteger();
+        driver.start(now -> {
+            int i = count.getAndIncrement();
+            calls[i] = now;
+            if (i == calls.length - 1) {
+                done.countDown();
+                return BotDriver.DONE;
+            }
+            return TimeUnit.MILLISECONDS.toNanos(12); // more than one round of the 8 ms wheel
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < calls.length; i++)
+            assertTrue(calls[i] - calls[i - 1] >= TimeUnit.MILLISECONDS.toNanos(12));
+    }
+
+    @Test
+    void parkedBotsRunOnlyWhenWoken() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        BotDriver.Task task = driver.start(now -> {
+            calls.incrementAndGet();
+            return BotDriver.PARK;
+        });
+        waitFor(() -> calls.get() == 1);
+        Thread.sleep(20);
+        assertEquals(1, calls.get());
+        task.wake();
+        waitFor(() -> calls.get() == 2);
+    }
+
+    @Test
+    void wakeUpWhileDecidingIsNotLost() throws InterruptedException {
+        CountDownLatch deciding = new CountDownLatch(1);
+        CountDownLatch woken = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        BotDriver.Task task = driver.start(now -> {
+            if (calls.incrementAndGet() == 1) {
+                deciding.countDown();
+                try {
+                    woken.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return BotDriver.PARK;
+        });
+        assertTrue(deciding.await(5, TimeUnit.SECONDS));
+        task.wake();
+        woken.countDown();
+        waitFor(() -> calls.get() == 2);
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+}
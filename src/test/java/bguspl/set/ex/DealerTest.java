@@ -3,6 +3,7 @@ package bguspl.set.ex;
 import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
+import bguspl.set.UserInterfaceHeadless;
 import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,13 +12,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class DealerTest {
@@ -59,13 +62,21 @@ class DealerTest {
     }
 
 
+    private void stubPlayersCards(int player, List<Integer> deck) {
+        when(table.getPlayersCards(eq(player), any(int[].class))).thenAnswer(invocation -> {
+            int[] cards = invocation.getArgument(1);
+            for (int i = 0; i < deck.size() && i < cards.length; i++) cards[i] = deck.get(i);
+            return deck.size();
+        });
+    }
+
     @Test
     void IsPlayersDeckASetTrue() {
         List<Integer> returnedDeck = new ArrayList<>();
         for (int i = 0; i< 3 ; i++){
             returnedDeck.add(i);
         }
-        when(table.getPlayersDeck(0)).thenReturn(returnedDeck);
+        stubPlayersCards(0, returnedDeck);
         assertTrue(dealer.isPlayersDeckASet(0));
     }
 
@@ -75,10 +86,163 @@ class DealerTest {
         for (int i = 1; i< 4 ; i++){
             returnedDeck.add(i);
         }
-        when(table.getPlayersDeck(0)).thenReturn(returnedDeck);
+        stubPlayersCards(0, returnedDeck);
         assertFalse(dealer.isPlayersDeckASet(0));
     }
 
+    @Test
+    void staleClaimIsDiscardedWithoutPenalty() {
+        when(table.isClaimCurrent(0)).thenReturn(false);
+        when(table.removeStaleTokens(0)).thenReturn(1);
+        dealer.CheckCards(0);
+        verify(mockPlayer1).claimDiscarded();
+        verify(mockPlayer1).updateTokensNum(false);
+        verify(mockPlayer1, never()).penalty();
+        verify(mockPlayer1, never()).point();
+    }
+
+    @Test
+    void aDealWithNoTimerAlwaysLeavesASet() {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TurnTimeoutSeconds", "-1");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, ui, new UtilImpl(config));
+        Table realTable = new Table(env);
+        // only cards with no feature of value 2: no three of them are a set
+        CardSource noSets = (deck, slot) -> {
+            for (int i = 0; i < deck.size(); i++)
+                if (!Integer.toString(deck.get(i), 3).contains("2")) return i;
+            return 0;
+        };
+        Dealer noSetsDealer = new Dealer(env, realTable, mockPlayers, noSets);
+
+        noSetsDealer.placeCardsOnTable();
+        assertEquals(config.tableSize, realTable.countCards());
+        assertEquals(1, realTable.getSetOnBoardSlots().size() / 3);
+    }
+
+    @Test
+    void extraSlotsOpenUntilThereIsASetAndCloseWhenItIsTaken() {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("MaxExtraSlots", "3");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, ui, new UtilImpl(config));
+        Table realTable = new Table(env);
+        // the table's cards have no feature of value 2 (no set among them), then any card
+        int[] dealt = {0};
+        CardSource noSets = (deck, slot) -> {
+            if (dealt[0]++ < config.tableSize)
+                for (int i = 0; i < deck.size(); i++)
+                    if (!Integer.toString(deck.get(i), 3).contains("2")) return i;
+            return 0;
+        };
+        Dealer expandingDealer = new Dealer(env, realTable, mockPlayers, noSets);
+
+        expandingDealer.placeCardsOnTable();
+        assertEquals(config.maxTableSize, realTable.countCards());
+        Queue<Integer> set = realTable.getSetOnBoardSlots();
+        assertEquals(3, set.size());
+
+        for (int slot : set)
+            realTable.removeCard(slot);
+        List<Integer> kept = realTable.snapshot().cards();
+        expandingDealer.placeCardsOnTable();
+        for (int slot = 0; slot < config.tableSize; slot++)
+            assertNotNull(realTable.slotToCard[slot]); // the extra cards moved down
+        assertTrue(realTable.snapshot().cards().containsAll(kept));
+        assertTrue(realTable.isThereASetOnBoard());
+    }
+
+    @Test
+    void aWarmClaimAllocatesOnlyItsBoardChanges() {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TurnTimeoutSeconds", "-1");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int[] slots = new int[3], cards = new int[3], wrong = new int[3];
+        long bytes = 0, tokenBytes = 0, changes = 0, claims = 0;
+        for (int game = 0; game < 300; game++) {
+            Table realTable = new Table(env);
+            Player[] players = new Player[config.players];
+            Dealer claimDealer = new Dealer(env, realTable, players);
+            for (int id = 0; id < players.length; id++)
+                players[id] = new Player(env, claimDealer, realTable, id, true);
+            claimDealer.placeCardsOnTable();
+            boolean warm = game >= 200;
+
+            // what a board change allocates: the immutable snapshot that replaces the board (see BoardSnapshot)
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 100; i++) {
+                realTable.placeToken(1, i % config.tableSize);
+                realTable.removeToken(1, i % config.tableSize);
+            }
+            if (warm) tokenBytes += threads.getThreadAllocatedBytes(thread) - before;
+
+            while (realTable.countCards() > 3 && findSet(env, realTable, slots, cards)) {
+                long sequence = realTable.snapshot().sequence();
+                before = threads.getThreadAllocatedBytes(thread);
+                // a claim on cards that are not a set (penalised, the tokens are taken back), then one on a set
+                wrong[0] = slots[0];
+                wrong[1] = slots[1];
+                wrong[2] = 0;
+                while (realTable.slotToCard[wrong[2]] == null || wrong[2] == slots[0] || wrong[2] == slots[1]
+                        || wrong[2] == slots[2])
+                    wrong[2]++;
+                for (int slot : wrong) realTable.placeToken(0, slot);
+                claimDealer.CheckCards(0);
+                for (int slot : wrong) realTable.removeToken(0, slot);
+                for (int slot : slots) realTable.placeToken(0, slot);
+                claimDealer.CheckCards(0);
+                long after = threads.getThreadAllocatedBytes(thread);
+                if (warm) {
+                    bytes += after - before;
+                    changes += realTable.snapshot().sequence() - sequence;
+                    claims += 2;
+                }
+            }
+        }
+        long perChange = tokenBytes / (100 * 200); // 200 token changes in each of the 100 warm games
+        // a little more per claim for the deals, whose changes copy more slots
+        assertTrue(bytes <= changes * perChange + claims * 64,
+                bytes / claims + " bytes per claim for " + changes / claims + " board changes of " + perChange + " bytes");
+    }
+
+    /**
+     * Finds a set on the table (its slots and cards), without allocating.
+     */
+    private static boolean findSet(Env env, Table table, int[] slots, int[] cards) {
+        int size = env.config.tableSize;
+        for (slots[0] = 0; slots[0] < size; slots[0]++)
+            for (slots[1] = slots[0] + 1; slots[1] < size; slots[1]++)
+                for (slots[2] = slots[1] + 1; slots[2] < size; slots[2]++) {
+                    boolean full = true;
+                    for (int i = 0; i < 3; i++) {
+                        Integer card = table.slotToCard[slots[i]];
+                        full &= card != null;
+                        cards[i] = full ? card : -1;
+                    }
+                    if (full && env.util.testSet(cards)) return true;
+                }
+        return false;
+    }
+
     @Test
     void getWinners() {
         when(mockPlayer1.getScore()).thenReturn(5);
@@ -0,0 +1,94 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveQueueTest {
+
+    private MoveQueue fill(MoveQueue.OverflowPolicy policy) {
+        MoveQueue moves = new MoveQueue(3, policy);
+        assertTrue(moves.offer(1));
+        assertTrue(moves.offer(2));
+        assertTrue(moves.offer(3));
+        return moves;
+    }
+
+    @Test
+    void pollInOrder() {
+        MoveQueue moves = fill(MoveQueue.OverflowPolicy.DROP_NEWEST);
+        assertEquals(1, moves.poll());
+        assertEquals(2, moves.poll());
+        assertEquals(3, moves.poll());
+        assertEquals(MoveQueue.NONE, moves.poll());
+        assertTrue(moves.isEmpty());
+    }
+
+    @Test
+    void dropNewest() {
+        MoveQueue moves = fill(MoveQueue.OverflowPolicy.DROP_NEWEST);
+        assertFalse(moves.offer(4));
+        assertEquals(1, moves.dropped());
+        assertEquals(1, moves.poll());
+        assertTrue(moves.offer(4));
+        assertEquals(2, moves.poll());
+        assertEquals(3, moves.poll());
+        assertEquals(4, moves.poll());
+    }
+
+    @Test
+    void dropOldest() {
+        MoveQueue moves = fill(MoveQueue.OverflowPolicy.DROP_OLDEST);
+        assertTrue(moves.offer(4));
+        assertEquals(1, moves.dropped());
+        assertEquals(3, moves.size());
+        assertEquals(2, moves.poll());
+        assertEquals(3, moves.poll());
+        assertEquals(4, moves.poll());
+    }
+
+    @Test
+    void coalesce() {
+        MoveQueue moves = fill(MoveQueue.OverflowPolicy.COALESCE);
+        assertTrue(moves.offer(2));
+        assertFalse(moves.offer(5));
+        assertEquals(1, moves.poll());
+        assertEquals(3, moves.poll());
+        assertEquals(MoveQueue.NONE, moves.poll());
+    }
+
+    @Test
+    void clear() {
+        MoveQueue moves = fill(MoveQueue.OverflowPolicy.DROP_NEWEST);
+        moves.clear();
+        assertTrue(moves.isEmpty());
+        assertTrue(moves.tryOffer(7));
+        assertEquals(7, moves.poll());
+    }
+
+    @Test
+    void singleProducerSingleConsumer() throws InterruptedException {
+        MoveQueue moves = new MoveQueue(3, MoveQueue.OverflowPolicy.DROP_NEWEST);
+        final int count = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++)
+                while (!moves.tryOffer(i % 1000))
+                    Thread.yield();
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            int slot;
+            while ((slot = moves.poll()) == MoveQueue.NONE)
+                Thread.yield();
+            assertEquals(i % 1000, slot);
+        }
+        producer.join();
+    }
+
+    @Test
+    void overflowPolicyFromName() {
+        assertEquals(MoveQueue.OverflowPolicy.DROP_OLDEST, MoveQueue.OverflowPolicy.fromName("DropOldest"));
+        assertEquals(MoveQueue.OverflowPolicy.COALESCE, MoveQueue.OverflowPolicy.fromName("coalesce"));
+        assertEquals(MoveQueue.OverflowPolicy.DROP_NEWEST, MoveQueue.OverflowPolicy.fromName("whatever"));
+    }
+}
@@ -74,6 +74,38 @@ class PlayerTest {
     }
 
 
+    @Test
+    void keyboardAndNetworkPressesAtTheSameTime() throws InterruptedException {
+        final int presses = 100000;
+        MoveQueue moves = player.getMoves();
+        Thread keyboard = new Thread(() -> {
+            for (int i = 0; i < presses; i++)
+                player.keyPressed(2 * i); // even slots from the keyboard (the EDT)
+        });
+        Thread network = new Thread(() -> {
+            for (int i = 0; i < presses; i++)
+                player.keyPressed(2 * i + 1); // odd slots from the network server's thread
+        });
+        keyboard.start();
+        network.start();
+
+        int received = 0;
+        int[] last = {-1, -1};
+        while (keyboard.isAlive() || network.isAlive() || !moves.isEmpty()) {
+            int slot = moves.poll();
+            if (slot == MoveQueue.NONE) {
+                Thread.yield();
+                continue;
+            }
+            assertTrue(slot > last[slot % 2], "the presses of each producer are taken in order");
+            last[slot % 2] = slot;
+            received++;
+        }
+        keyboard.join();
+        network.join();
+        assertEquals(2 * presses, received + moves.dropped()); // every press was taken or dropped by the policy
+    }
+
     @Test
     void updateTokensNum1() {
         int expected = player.getNumOfOnBoardTokens()+1;
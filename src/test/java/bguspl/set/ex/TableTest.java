@@ -99,7 +99,7 @@ class TableTest {
     void placeToken() {
         fillAllSlots();
         table.placeToken(0,0);
-        assertTrue(table.slotsToPlayers.get()[0][0]);
+        assertTrue(table.snapshot().hasToken(0, 0));
     }
 
     @Test
@@ -107,14 +107,67 @@ class TableTest {
         fillAllSlots();
         table.placeToken(0,0);
         table.removeToken(0,0);
-        assertFalse(table.slotsToPlayers.get()[0][0]);
+        assertFalse(table.snapshot().hasToken(0, 0));
     }
 
     @Test
     void playerFinished() {
         table.playerFinished(0);
-        int expected = 0;
-        assertEquals(expected,table.finished.get().removeFirst());
+        assertTrue(table.hasClaims());
+        int[] claims = new int[2];
+        assertEquals(1, table.drainClaims(claims));
+        assertEquals(0, claims[0]);
+        assertFalse(table.hasClaims());
+    }
+
+    @Test
+    void claimsAreDrainedInTheOrderTheyWereMade() {
+        table.playerFinished(1);
+        table.playerFinished(0);
+        int[] claims = new int[2];
+        assertEquals(2, table.drainClaims(claims));
+        assertArrayEquals(new int[]{1, 0}, claims);
+        assertEquals(0, table.drainClaims(claims));
+    }
+
+    @Test
+    void placeCardsAndClearSlotsAreOneChangeEach() {
+        long before = table.snapshot().sequence();
+        table.placeCards(new int[]{8, 3, 5}, new int[]{0, 2, 3}, 3);
+        assertEquals(before + 1, table.snapshot().sequence());
+        assertEquals(3, table.snapshot().countCards());
+        assertEquals(3, (int) slotToCard[2]);
+        assertEquals(3, (int) cardToSlot[5]);
+
+        table.clearSlots(new int[]{0, 3}, 2);
+        assertEquals(before + 2, table.snapshot().sequence());
+        assertEquals(1, table.countCards());
+        assertEquals(3, table.snapshot().card(2));
+        assertEquals(-1, table.snapshot().card(3));
+        assertNull(cardToSlot[8]);
+    }
+
+    @Test
+    void claimOnAReplacedCardIsStale() {
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            table.placeCard(slot, slot);
+        for (int slot = 0; slot < 3; slot++)
+            assertTrue(table.placeToken(0, slot));
+        table.playerFinished(0);
+        assertTrue(table.isClaimCurrent(0));
+
+        table.clearSlot(1);
+        table.placeCard(9, 1);
+        assertFalse(table.isClaimCurrent(0));
+        assertEquals(1, table.removeStaleTokens(0));
+        assertFalse(table.snapshot().hasToken(0, 1));
+        assertTrue(table.snapshot().hasToken(0, 0));
+    }
+
+    @Test
+    void noTokenOnAnEmptySlot() {
+        assertFalse(table.placeToken(0, 0));
+        assertFalse(table.snapshot().hasToken(0, 0));
     }
 
     static class MockUserInterface implements UserInterface {
@@ -165,6 +218,11 @@ class TableTest {
             return null;
         }
 
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public void spin(){}
     }